@@ -0,0 +1,163 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "indexing-settings")
+public class IndexingSettings {
+    /**
+     * Количество строк в одном многострочном INSERT при записи лемм и индексов
+     */
+    private int batchSize = 1000;
+
+    /**
+     * Сколько сайтов индексируется одновременно
+     */
+    private int maxParallelSites = 4;
+
+    /**
+     * Ограничение одновременных загрузок страниц по всем сайтам вместе
+     */
+    private int maxTotalFetches = 200;
+
+    /**
+     * Инкрементальная переиндексация: условные запросы по ETag/Last-Modified, переиндексируются
+     * только страницы с изменившимся текстом, исчезнувшие страницы удаляются
+     */
+    private boolean incremental = false;
+
+    /**
+     * Потоки лемматизации при записи лемм вторым проходом по страницам (pipeline.enabled: false)
+     */
+    private int lemmaPassThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Во время индексации поколение индекса сайта (сброс кэшей поиска) увеличивается не чаще, мс
+     */
+    private long generationIntervalMs = 5000;
+
+    private Pipeline pipeline = new Pipeline();
+
+    private Fetcher fetcher = new Fetcher();
+
+    private Frontier frontier = new Frontier();
+
+    private UrlFilter urlFilter = new UrlFilter();
+
+    private Robots robots = new Robots();
+
+    private Checkpoint checkpoint = new Checkpoint();
+
+    private Postings postings = new Postings();
+
+    /**
+     * Хранилище вхождений лемм (PostingStorage):
+     * ROWS - строка index_melnikov на каждую пару (страница, лемма),
+     * BLOBS - сжатые списки вхождений лемм сегментами до segmentSize вхождений и сжатые вхождения страниц.
+     * После смены хранилища сайты нужно переиндексировать
+     */
+    @Getter
+    @Setter
+    public static class Postings {
+        private Layout layout = Layout.ROWS;
+        private int segmentSize = 4096;
+
+        public enum Layout {
+            ROWS, BLOBS
+        }
+    }
+
+    /**
+     * Конвейер индексации: загрузка -> извлечение текста -> лемматизация -> запись.
+     * Если выключен, леммы записываются вторым проходом по страницам после обхода сайта.
+     */
+    @Getter
+    @Setter
+    public static class Pipeline {
+        private boolean enabled = true;
+        private int fetchThreads = 120;
+        private int extractThreads = 2;
+        private int lemmaThreads = Runtime.getRuntime().availableProcessors();
+        private int persistThreads = 1;
+        private int queueCapacity = 500;
+    }
+
+    /**
+     * Загрузка страниц через java.net.http.HttpClient
+     */
+    @Getter
+    @Setter
+    public static class Fetcher {
+        private String userAgent = "Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6";
+        private String referrer = "http://www.google.com";
+        private int connectTimeoutMs = 10_000;
+        private int requestTimeoutMs = 30_000;
+        private int httpThreads = 16;           // потоки HttpClient для обработки ответов
+        private int perHostConnections = 8;     // одновременных запросов к одному хосту
+        private int crawlDelayMs = 0;           // пауза между запросами к одному хосту
+        // тело ответа с другим Content-Type не загружается; ответ без Content-Type загружается
+        private List<String> contentTypes = List.of("text/html", "application/xhtml+xml");
+    }
+
+    /**
+     * Множество найденных ссылок при обходе сайта: отпечатки ссылок в хэш-множестве
+     * или, для очень больших сайтов, фильтр Блума
+     */
+    @Getter
+    @Setter
+    public static class Frontier {
+        private boolean bloomFilter = false;
+        private int expectedUrls = 100_000;         // начальный размер множества / расчётный размер фильтра
+        private double falsePositiveRate = 0.001;   // доля новых ссылок, пропускаемых фильтром Блума
+    }
+
+    /**
+     * Приведение ссылок к каноническому виду и отбор ссылок для обхода (UrlCanonicalizer).
+     * Шаблоны include/exclude задаются для каждого сайта в indexing-settings.sites
+     */
+    @Getter
+    @Setter
+    public static class UrlFilter {
+        private List<String> denyExtensions = List.of("jpg", "jpeg", "png", "gif", "bmp", "svg", "webp", "ico",
+                "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "rtf", "odt",
+                "zip", "rar", "7z", "gz", "tar", "bz2", "exe", "msi", "dmg", "apk",
+                "mp3", "mp4", "avi", "mov", "wmv", "webm", "wav", "ogg",
+                "css", "js", "json", "xml", "rss", "woff", "woff2", "ttf", "eot");
+        // удаляемые параметры запроса, * - любые символы
+        private List<String> stripParams = List.of("utm_*", "gclid", "yclid", "fbclid", "_openstat", "_ga",
+                "sessionid", "session_id", "sid", "phpsessid", "jsessionid");
+        private boolean stripQuery = false;     // true - отбрасывать все параметры запроса
+        private int maxDepth = 10;              // сегментов пути, 0 - без ограничения
+    }
+
+    /**
+     * robots.txt и sitemap.xml: запрещённые разделы не обходятся, Crawl-delay задаёт паузу между
+     * запросами, ссылки из sitemap ставятся в очередь обхода сразу при старте
+     */
+    @Getter
+    @Setter
+    public static class Robots {
+        private boolean enabled = true;
+        private boolean sitemaps = true;
+        private int maxSitemaps = 50;               // файлов sitemap на сайт, включая вложенные
+        private int maxSitemapUrls = 1_000_000;     // ссылок из sitemap на сайт
+    }
+
+    /**
+     * Контрольные точки индексации: остановленная или прерванная индексация сайта продолжается
+     * с последней точки, а не начинается заново
+     */
+    @Getter
+    @Setter
+    public static class Checkpoint {
+        private boolean enabled = true;
+        private int intervalSec = 60;       // как часто сохранять точку во время обхода, 0 - только при остановке
+    }
+}
@@ -3,6 +3,8 @@ package searchengine.config;
 public class Messages {
     public static final String INDEXING_HAS_ALREADY_STARTED = "Индексация уже запущена";
     public static final String INDEXING_STOPPED_BY_USER = "Индексация остановлена пользователем";
+    public static final String INDEXING_INTERRUPTED = "Индексация прервана перезапуском приложения";
+    public static final String INDEX_WRITE_FAILED = "Ошибка записи индекса: ";
     public static final String INDEXING_IS_NOT_RUNNING = "Индексация не запущена";
     public static final String THIS_PAGE_IS_LOCATED_OUTSIDE_THE_SITES_SPECIFIED_IN_THE_CONFIGURATION_FILE = "Данная страница находится за пределами сайтов, указанных в конфигурационном файле";
     public static final String EMPTY_SEARCH_QUERY_SPECIFIED = "Задан пустой поисковый запрос";
@@ -0,0 +1,27 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "morphology-settings")
+public class MorphologySettings {
+    /**
+     * Загружать словари при первом обращении, а не при старте приложения
+     */
+    private boolean lazy = false;
+
+    /**
+     * Размер кэша слово -> нормальная форма, 0 - без кэша
+     */
+    private int cacheSize = 200_000;
+
+    /**
+     * Файл, в который кэш сохраняется при остановке и из которого читается при старте; пусто - не сохранять
+     */
+    private String cacheFile = "";
+}
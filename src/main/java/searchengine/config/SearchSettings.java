@@ -0,0 +1,95 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    /**
+     * Источник индекса для поиска:
+     * DATABASE - запросы к таблицам lemma/index_melnikov,
+     * MEMORY - обратный индекс в памяти (InvertedIndex)
+     */
+    private Engine engine = Engine.DATABASE;
+
+    /**
+     * Сколько лучших страниц отбирать за запрос как минимум, даже если offset + limit меньше:
+     * следующие страницы выдачи берутся из кэша без пересчёта
+     */
+    private int minTopK = 100;
+
+    private Ranking ranking = new Ranking();
+
+    private Cache cache = new Cache();
+
+    private Parallel parallel = new Parallel();
+
+    private BlockMax blockMax = new BlockMax();
+
+    /**
+     * Убирать из запроса леммы, которые есть на всех страницах сайта больше чем из 1000 страниц.
+     * При block-max такие запросы выполняются быстро и без этого, а удаление лемм меняет выдачу
+     */
+    private boolean dropFrequentLemmas = false;
+
+    public enum Engine {
+        DATABASE, MEMORY
+    }
+
+    /**
+     * Модель ранжирования:
+     * ABSOLUTE - сумма рангов лемм, нормированная на максимум по сайту,
+     * BM25 - с учётом длины страницы и редкости леммы на сайте
+     */
+    @Getter
+    @Setter
+    public static class Ranking {
+        private Model model = Model.ABSOLUTE;
+        private double k1 = 1.2;                // насыщение частоты леммы на странице
+        private double b = 0.75;                // влияние длины страницы
+
+        public enum Model {
+            ABSOLUTE, BM25
+        }
+    }
+
+    /**
+     * Кэш результатов поиска: ранжированный список страниц запроса и сниппеты страниц
+     */
+    @Getter
+    @Setter
+    public static class Cache {
+        private boolean enabled = true;
+        private int maxQueries = 1000;          // запросов в кэше
+        private int maxSnippets = 10_000;       // сниппетов в кэше
+        private int siteTtlSec = 60;            // время жизни кэша таблицы site, секунд
+    }
+
+    /**
+     * Пропуск блоков списков вхождений, страницы которых не попадут в K лучших (block-max).
+     * Включается, когда в самом коротком списке запроса не меньше min-postings вхождений;
+     * число найденных страниц для пропущенных блоков оценивается, поэтому на коротких списках
+     * оно остаётся точным
+     */
+    @Getter
+    @Setter
+    public static class BlockMax {
+        private boolean enabled = true;
+        private int minPostings = 4096;
+    }
+
+    /**
+     * Параллельное ранжирование сайтов при поиске по всем сайтам
+     */
+    @Getter
+    @Setter
+    public static class Parallel {
+        private int threads = 4;                // потоков ранжирования сайтов
+        private long deadlineMs = 2000;         // срок ранжирования запроса по нескольким сайтам, мс; опоздавшие не попадают в выдачу
+    }
+}
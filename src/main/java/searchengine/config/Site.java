@@ -3,9 +3,14 @@ package searchengine.config;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Setter
 @Getter
 public class Site {
     private String url;
     private String name;
+    private List<String> include = new ArrayList<>();   // регулярные выражения пути: обходятся только совпавшие
+    private List<String> exclude = new ArrayList<>();   // регулярные выражения пути, которые не обходятся
 }
@@ -9,6 +9,8 @@ import java.util.List;
 @Data
 public class SearchResponse extends Response {
     private int count;
+    private boolean approximateCount;   // count оценён: пропускались блоки вхождений (search-settings.block-max)
+    private boolean partial;        // не все сайты успели ранжироваться за search-settings.parallel.deadline-ms
     private String error;
     private List<SearchData> data = new ArrayList<>();
 }
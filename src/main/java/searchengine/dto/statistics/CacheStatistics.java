@@ -0,0 +1,14 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class CacheStatistics {
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private double hitRate;
+    private long snippetHits;
+    private long snippetMisses;
+}
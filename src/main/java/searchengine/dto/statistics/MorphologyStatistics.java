@@ -0,0 +1,15 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class MorphologyStatistics {
+    private boolean loaded;
+    private long loadTimeMs;
+    private long memoryMb;
+    private long cacheSize;
+    private long cacheHits;
+    private long cacheMisses;
+    private long cacheEvictions;
+    private double cacheHitRate;
+}
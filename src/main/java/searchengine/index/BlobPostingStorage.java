@@ -0,0 +1,327 @@
+package searchengine.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.IndexingSettings;
+import searchengine.lemma.LemmaOccurrences;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Хранилище вхождений в сжатом виде:
+ * posting_segment - список вхождений каждой леммы, разбитый на сегменты до segment-size вхождений,
+ * page_postings - вхождения всех лемм страницы одной строкой (для сниппетов и удаления страницы).
+ * Новые вхождения леммы дописываются в её последний сегмент, пока он не заполнен и pageId идут
+ * по возрастанию, иначе начинается новый сегмент. Удаление страницы переписывает только сегменты,
+ * в диапазон pageId которых она попадает. compact() после индексации сайта переписывает списки
+ * лемм, разбитые на лишние сегменты, в упорядоченные полные сегменты.
+ * Сегменты изменяются чтением и перезаписью, поэтому читаемые для изменения строки блокируются
+ * select ... for update до конца транзакции: параллельная запись не перезапишет сегмент старой версией.
+ * Каждая запись, удаление страницы и перезапись списка одной леммы при compact() выполняются
+ * в одной транзакции (или в транзакции вызывающего): поиск не видит список леммы наполовину
+ * переписанным, а сбой не оставляет его потерянным.
+ */
+@Slf4j
+@Component
+public class BlobPostingStorage implements PostingStorage {
+    private static final String UPSERT_SEGMENT = "insert into search_engine.posting_segment" +
+            "(lemma_id, segment_no, site_id, first_page_id, last_page_id, posting_count, data) " +
+            "values (?, ?, ?, ?, ?, ?, ?) as new on duplicate key update first_page_id = new.first_page_id, " +
+            "last_page_id = new.last_page_id, posting_count = new.posting_count, data = new.data";
+    private static final String UPSERT_PAGE = "insert into search_engine.page_postings(page_id, site_id, data) " +
+            "values (?, ?, ?) as new on duplicate key update site_id = new.site_id, data = new.data";
+    private static final String SELECT_TAILS = "select s.lemma_id, s.segment_no, s.posting_count, s.last_page_id, s.data " +
+            "from search_engine.posting_segment s join (select lemma_id, max(segment_no) segment_no " +
+            "from search_engine.posting_segment where lemma_id in (%s) group by lemma_id) t " +
+            "on t.lemma_id = s.lemma_id and t.segment_no = s.segment_no order by s.lemma_id for update";
+    private static final String SELECT_SEGMENTS = "select data from search_engine.posting_segment " +
+            "where lemma_id = ? order by segment_no";
+    private static final String SELECT_SITE_SEGMENTS = "select l.lemma, s.data from search_engine.posting_segment s " +
+            "join search_engine.lemma l on l.lemma_id = s.lemma_id where s.site_id = ? order by s.lemma_id, s.segment_no";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingTemplate;
+    private final IndexingSettings indexingSettings;
+    private final TransactionTemplate transactionTemplate;
+
+    public BlobPostingStorage(DataSource dataSource, IndexingSettings indexingSettings,
+                              PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingTemplate = new JdbcTemplate(dataSource);
+        this.streamingTemplate.setFetchSize(Integer.MIN_VALUE);     // потоковое чтение результата в MySQL
+        this.indexingSettings = indexingSettings;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public IndexingSettings.Postings.Layout getLayout() {
+        return IndexingSettings.Postings.Layout.BLOBS;
+    }
+
+    /**
+     * Сначала пишутся вхождения страниц, затем сегменты лемм: если запись прервётся, по page_postings
+     * страница будет найдена findUnfinishedPages и удалена из уже дописанных сегментов
+     */
+    @Override
+    public void write(List<Posting> postings) {
+        if (postings.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> writeSegments(postings));
+    }
+
+    private void writeSegments(List<Posting> postings) {
+        Map<Integer, List<Posting>> byPage = new TreeMap<>();
+        Map<Integer, List<Posting>> byLemma = new TreeMap<>();     // одинаковый порядок блокировок строк
+        for (Posting posting : postings) {
+            byPage.computeIfAbsent(posting.pageId(), k -> new ArrayList<>()).add(posting);
+            byLemma.computeIfAbsent(posting.lemmaId(), k -> new ArrayList<>()).add(posting);
+        }
+
+        List<Object[]> pageRows = new ArrayList<>(byPage.size());
+        byPage.forEach((pageId, pagePostings) -> {
+            pagePostings.sort((a, b) -> Integer.compare(a.lemmaId(), b.lemmaId()));
+            int size = pagePostings.size();
+            int[] lemmaIds = new int[size];
+            float[] ranks = new float[size];
+            byte[][] positions = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                lemmaIds[i] = pagePostings.get(i).lemmaId();
+                ranks[i] = pagePostings.get(i).rank();
+                positions[i] = pagePostings.get(i).positions();
+            }
+            pageRows.add(new Object[]{pageId, pagePostings.get(0).siteId(),
+                    PostingCodec.encodePage(lemmaIds, ranks, positions)});
+        });
+        jdbcTemplate.batchUpdate(UPSERT_PAGE, pageRows);
+
+        Map<Integer, Tail> tails = readTails(byLemma.keySet());
+        List<Object[]> segmentRows = new ArrayList<>();
+        byLemma.forEach((lemmaId, lemmaPostings) -> {
+            lemmaPostings.sort((a, b) -> Integer.compare(a.pageId(), b.pageId()));
+            int siteId = lemmaPostings.get(0).siteId();
+            PostingCodec.Postings merged = new PostingCodec.Postings();
+            Tail tail = tails.get(lemmaId);
+            int segmentNo = 0;
+            if (tail != null) {
+                if (tail.count() < segmentSize() && tail.lastPageId() < lemmaPostings.get(0).pageId()) {
+                    PostingCodec.decodeSegment(tail.data(), merged);     // дописывается в последний сегмент
+                    segmentNo = tail.segmentNo();
+                } else {
+                    segmentNo = tail.segmentNo() + 1;
+                }
+            }
+            lemmaPostings.forEach(posting -> merged.add(posting.pageId(), posting.rank()));
+            addSegmentRows(segmentRows, lemmaId, siteId, segmentNo, merged);
+        });
+        jdbcTemplate.batchUpdate(UPSERT_SEGMENT, segmentRows);
+    }
+
+    @Override
+    public void removePage(int siteId, int pageId) {
+        transactionTemplate.executeWithoutResult(status -> removePageSegments(pageId));
+    }
+
+    private void removePageSegments(int pageId) {
+        List<byte[]> rows = jdbcTemplate.query("select data from search_engine.page_postings where page_id = ? " +
+                "for update", (rs, rowNum) -> rs.getBytes(1), pageId);
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Integer> lemmaIds = new ArrayList<>();
+        PostingCodec.decodePage(rows.get(0), (lemmaId, rank, positions) -> lemmaIds.add(lemmaId));
+
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (List<Integer> chunk : chunks(lemmaIds)) {
+            jdbcTemplate.update("update search_engine.lemma set frequency = frequency - 1 where lemma_id in ("
+                    + placeholders(chunk.size()) + ")", chunk.toArray());
+            List<Object> args = new ArrayList<>(chunk);
+            args.add(pageId);
+            args.add(pageId);
+            jdbcTemplate.query("select lemma_id, segment_no, data from search_engine.posting_segment " +
+                    "where lemma_id in (" + placeholders(chunk.size()) + ") " +
+                    "and first_page_id <= ? and last_page_id >= ? order by lemma_id, segment_no for update", rs -> {
+                PostingCodec.Postings postings = new PostingCodec.Postings();
+                PostingCodec.decodeSegment(rs.getBytes(3), postings);
+                if (!postings.remove(pageId)) {
+                    return;
+                }
+                if (postings.size() == 0) {
+                    deletes.add(new Object[]{rs.getInt(1), rs.getInt(2)});
+                } else {
+                    int[] pageIds = postings.pageIds();
+                    updates.add(new Object[]{pageIds[0], pageIds[postings.size() - 1], postings.size(),
+                            PostingCodec.encodeSegment(pageIds, postings.ranks(), 0, postings.size()),
+                            rs.getInt(1), rs.getInt(2)});
+                }
+            }, args.toArray());
+        }
+        jdbcTemplate.batchUpdate("update search_engine.posting_segment set first_page_id = ?, last_page_id = ?, " +
+                "posting_count = ?, data = ? where lemma_id = ? and segment_no = ?", updates);
+        jdbcTemplate.batchUpdate("delete from search_engine.posting_segment where lemma_id = ? and segment_no = ?",
+                deletes);
+        jdbcTemplate.update("delete from search_engine.page_postings where page_id = ?", pageId);
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("delete from search_engine.posting_segment where site_id = ?", siteId);
+            jdbcTemplate.update("delete from search_engine.page_postings where site_id = ?", siteId);
+        });
+    }
+
+    @Override
+    public List<Integer> findUnfinishedPages(int siteId) {
+        return jdbcTemplate.queryForList("select pp.page_id from search_engine.page_postings pp " +
+                "join search_engine.page p on p.page_id = pp.page_id " +
+                "where pp.site_id = ? and p.lemma_count is null", Integer.class, siteId);
+    }
+
+    @Override
+    public PostingList read(int lemmaId) {
+        PostingCodec.Postings postings = new PostingCodec.Postings();
+        streamingTemplate.query(SELECT_SEGMENTS, rs -> {
+            PostingCodec.decodeSegment(rs.getBytes(1), postings);
+        }, lemmaId);
+        return postings.build();
+    }
+
+    @Override
+    public Map<String, PostingList> readSite(int siteId) {
+        Map<String, PostingCodec.Postings> lemmas = new HashMap<>();
+        streamingTemplate.query(SELECT_SITE_SEGMENTS, rs -> {
+            PostingCodec.decodeSegment(rs.getBytes(2),
+                    lemmas.computeIfAbsent(rs.getString(1), k -> new PostingCodec.Postings()));
+        }, siteId);
+        Map<String, PostingList> site = new HashMap<>(lemmas.size() * 4 / 3 + 1);
+        lemmas.forEach((lemma, postings) -> site.put(lemma, postings.build()));
+        return site;
+    }
+
+    @Override
+    public Map<String, LemmaOccurrences> readPositions(int pageId, List<String> lemmas) {
+        Map<String, LemmaOccurrences> occurrences = new HashMap<>();
+        if (lemmas.isEmpty()) {
+            return occurrences;
+        }
+        List<Object> args = new ArrayList<>(lemmas.size() + 1);
+        args.add(pageId);
+        args.addAll(lemmas);
+        Map<Integer, String> lemmaIds = new HashMap<>();
+        jdbcTemplate.query("select l.lemma_id, l.lemma from search_engine.lemma l " +
+                "join search_engine.page_postings pp on pp.site_id = l.site_id " +
+                "where pp.page_id = ? and l.lemma in (" + placeholders(lemmas.size()) + ")", rs -> {
+            lemmaIds.put(rs.getInt(1), rs.getString(2));
+        }, args.toArray());
+        if (lemmaIds.isEmpty()) {
+            return occurrences;
+        }
+        List<byte[]> rows = jdbcTemplate.query("select data from search_engine.page_postings where page_id = ?",
+                (rs, rowNum) -> rs.getBytes(1), pageId);
+        if (!rows.isEmpty()) {
+            PostingCodec.decodePage(rows.get(0), (lemmaId, rank, positions) -> {
+                String lemma = lemmaIds.get(lemmaId);
+                if (lemma != null && positions.length > 0) {
+                    occurrences.put(lemma, LemmaOccurrences.decode(positions));
+                }
+            });
+        }
+        return occurrences;
+    }
+
+    /**
+     * Переписывает списки лемм сайта, разбитые на больше сегментов, чем нужно для их длины
+     * (дописывание не по порядку pageId, удаления страниц), в упорядоченные полные сегменты
+     */
+    @Override
+    public void compact(int siteId) {
+        long startTime = System.currentTimeMillis();
+        List<Integer> lemmaIds = jdbcTemplate.queryForList("select lemma_id from search_engine.posting_segment " +
+                "where site_id = ? group by lemma_id having count(*) > ceil(sum(posting_count) / ?)",
+                Integer.class, siteId, segmentSize());
+        for (Integer lemmaId : lemmaIds) {
+            transactionTemplate.executeWithoutResult(status -> {
+                PostingCodec.Postings postings = new PostingCodec.Postings();
+                jdbcTemplate.query(SELECT_SEGMENTS + " for update", rs -> {
+                    PostingCodec.decodeSegment(rs.getBytes(1), postings);
+                }, lemmaId);
+                List<Object[]> segmentRows = new ArrayList<>();
+                addSegmentRows(segmentRows, lemmaId, siteId, 0, postings);
+                jdbcTemplate.update("delete from search_engine.posting_segment where lemma_id = ?", lemmaId);
+                jdbcTemplate.batchUpdate(UPSERT_SEGMENT, segmentRows);
+            });
+        }
+        if (!lemmaIds.isEmpty()) {
+            log.info("siteId: {} posting lists compacted: {} time: {} ms", siteId, lemmaIds.size(),
+                    System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Строки сегментов списка вхождений, начиная с сегмента firstSegmentNo
+     */
+    private void addSegmentRows(List<Object[]> rows, int lemmaId, int siteId, int firstSegmentNo,
+                                PostingCodec.Postings postings) {
+        int[] pageIds = postings.pageIds();
+        float[] ranks = postings.ranks();
+        int segmentSize = segmentSize();
+        int segmentNo = firstSegmentNo;
+        for (int from = 0; from < postings.size(); from += segmentSize) {
+            int to = Math.min(from + segmentSize, postings.size());
+            rows.add(new Object[]{lemmaId, segmentNo++, siteId, pageIds[from], pageIds[to - 1], to - from,
+                    PostingCodec.encodeSegment(pageIds, ranks, from, to)});
+        }
+    }
+
+    /**
+     * Последние сегменты лемм, заблокированные до конца транзакции. Сначала блокируются строки самих лемм:
+     * у новой леммы сегментов ещё нет, и без этого две записи создали бы её сегмент 0 одновременно
+     */
+    private Map<Integer, Tail> readTails(Collection<Integer> lemmaIds) {
+        Map<Integer, Tail> tails = new HashMap<>(lemmaIds.size() * 4 / 3 + 1);
+        for (List<Integer> chunk : chunks(new ArrayList<>(lemmaIds))) {
+            jdbcTemplate.query("select lemma_id from search_engine.lemma where lemma_id in (" +
+                    placeholders(chunk.size()) + ") order by lemma_id for update", rs -> {
+            }, chunk.toArray());
+            jdbcTemplate.query(String.format(SELECT_TAILS, placeholders(chunk.size())), rs -> {
+                tails.put(rs.getInt(1), new Tail(rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getBytes(5)));
+            }, chunk.toArray());
+        }
+        return tails;
+    }
+
+    private int segmentSize() {
+        return Math.max(1, indexingSettings.getPostings().getSegmentSize());
+    }
+
+    private List<List<Integer>> chunks(List<Integer> ids) {
+        List<List<Integer>> chunks = new ArrayList<>();
+        int batchSize = Math.max(1, indexingSettings.getBatchSize());
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            chunks.add(ids.subList(i, Math.min(i + batchSize, ids.size())));
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Последний сегмент списка леммы
+     */
+    private record Tail(int segmentNo, int count, int lastPageId, byte[] data) {
+    }
+}
@@ -0,0 +1,122 @@
+package searchengine.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Статистика страниц сайта для моделей ранжирования: число страниц и длина каждой страницы в леммах
+ * (page.lemma_count, заполняется при записи индексов). Длины лежат в массиве по pageId, чтобы при
+ * оценке страниц не было поиска в Map. Статистика перезагружается при смене поколения индекса сайта.
+ */
+@Slf4j
+@Component
+public class DocumentStatistics {
+    private static final String SELECT_LENGTHS = "select page_id, lemma_count from search_engine.page " +
+            "where site_id = ? and code = 200 order by page_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IndexGeneration indexGeneration;
+    private final Map<Integer, SiteDocuments> sites = new ConcurrentHashMap<>();
+
+    public DocumentStatistics(DataSource dataSource, IndexGeneration indexGeneration) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(Integer.MIN_VALUE);     // потоковое чтение результата в MySQL
+        this.indexGeneration = indexGeneration;
+    }
+
+    /**
+     * Статистика страниц сайта
+     * @param siteId - id сайта
+     */
+    public SiteDocuments get(int siteId) {
+        long generation = indexGeneration.get(siteId);
+        SiteDocuments site = sites.get(siteId);
+        if (site == null || site.generation() != generation) {
+            site = sites.compute(siteId, (k, old) -> old != null && old.generation() == generation
+                    ? old : load(siteId, generation));
+        }
+        return site;
+    }
+
+    private SiteDocuments load(int siteId, long generation) {
+        long startTime = System.currentTimeMillis();
+        LengthsLoader loader = new LengthsLoader();
+        jdbcTemplate.query(SELECT_LENGTHS, loader, siteId);
+        SiteDocuments site = loader.build(generation);
+        log.info("Document statistics for siteId: {} loaded, pages: {} avg length: {} time: {} ms",
+                siteId, site.docCount(), Math.round(site.avgLength()), System.currentTimeMillis() - startTime);
+        return site;
+    }
+
+    /**
+     * Статистика страниц одного сайта
+     * @param generation - поколение индекса сайта, для которого она загружена
+     * @param docCount   - количество страниц с кодом 200
+     * @param avgLength  - средняя длина страницы в леммах
+     * @param minLength  - наименьшая длина страницы, которую может вернуть length()
+     * @param basePageId - pageId первой страницы сайта
+     * @param lengths    - длины страниц по pageId - basePageId, 0 если длина неизвестна
+     */
+    public record SiteDocuments(long generation, int docCount, double avgLength, double minLength, int basePageId,
+                                int[] lengths) {
+
+        /**
+         * Длина страницы в леммах, для страниц без lemma_count - средняя длина
+         * @param pageId - id страницы
+         */
+        public double length(int pageId) {
+            int offset = pageId - basePageId;
+            if (offset < 0 || offset >= lengths.length || lengths[offset] == 0) {
+                return avgLength;
+            }
+            return lengths[offset];
+        }
+    }
+
+    private static class LengthsLoader implements RowCallbackHandler {
+        private int basePageId = -1;
+        private int[] lengths = new int[1024];
+        private int docCount;
+        private int knownCount;
+        private long totalLength;
+        private int minLength = Integer.MAX_VALUE;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            int pageId = rs.getInt(1);
+            int length = rs.getInt(2);
+            docCount++;
+            if (rs.wasNull() || length <= 0) {
+                return;
+            }
+            if (basePageId < 0) {
+                basePageId = pageId;
+            }
+            int offset = pageId - basePageId;
+            if (offset >= lengths.length) {
+                lengths = Arrays.copyOf(lengths, Math.max(offset + 1, lengths.length * 2));
+            }
+            lengths[offset] = length;
+            knownCount++;
+            totalLength += length;
+            minLength = Math.min(minLength, length);
+        }
+
+        SiteDocuments build(long generation) {
+            double avgLength = knownCount == 0 ? 1 : (double) totalLength / knownCount;
+            int size = basePageId < 0 ? 0 : lengths.length;
+            // для страниц без lemma_count length() возвращает среднюю длину
+            return new SiteDocuments(generation, docCount, avgLength, Math.min(minLength, avgLength),
+                    Math.max(basePageId, 0), Arrays.copyOf(lengths, size));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package searchengine.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поколение индекса сайта: счётчик увеличивается после каждого изменения лемм и индексов сайта в БД.
+ * По нему InvertedIndex и кэш результатов поиска понимают, что загруженные данные устарели.
+ * Увеличивать счётчик нужно после записи в БД, иначе поиск может закэшировать данные до записи
+ * под новым поколением.
+ * Во время индексации запись идёт непрерывно, поэтому счётчик увеличивается не чаще интервала
+ * (bumpThrottled), а после окончания индексации или удаления сайта - обязательно (bump).
+ */
+@Component
+public class IndexGeneration {
+    private final Map<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> bumpTimes = new ConcurrentHashMap<>();   // время последнего увеличения
+
+    /**
+     * Текущее поколение индекса сайта
+     * @param siteId - id сайта
+     */
+    public long get(int siteId) {
+        AtomicLong generation = generations.get(siteId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    /**
+     * Поколения нескольких сайтов в порядке списка
+     * @param siteIds - id сайтов
+     */
+    public long[] snapshot(Collection<Integer> siteIds) {
+        return siteIds.stream().mapToLong(this::get).toArray();
+    }
+
+    /**
+     * Отмечает изменение лемм и индексов сайта
+     * @param siteId - id сайта
+     */
+    public void bump(int siteId) {
+        generations.computeIfAbsent(siteId, k -> new AtomicLong()).incrementAndGet();
+        bumpTimes.computeIfAbsent(siteId, k -> new AtomicLong()).set(System.currentTimeMillis());
+    }
+
+    /**
+     * Отмечает изменение, если с прошлого увеличения счётчика прошло не меньше intervalMs.
+     * Пропущенное изменение должно быть отмечено последующим bump()
+     * @param siteId     - id сайта
+     * @param intervalMs - минимальный интервал между увеличениями, мс
+     */
+    public void bumpThrottled(int siteId, long intervalMs) {
+        AtomicLong bumpedAt = bumpTimes.computeIfAbsent(siteId, k -> new AtomicLong());
+        long now = System.currentTimeMillis();
+        long last = bumpedAt.get();
+        if (now - last >= intervalMs && bumpedAt.compareAndSet(last, now)) {
+            generations.computeIfAbsent(siteId, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package searchengine.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Обратный индекс в памяти: для каждой пары (siteId, лемма) - список вхождений PostingList.
+ * Таблица lemma и хранилище вхождений (PostingStorage) остаются основным хранилищем, индекс сайта загружается из них
+ * при первом запросе и перезагружается, если с тех пор изменилось поколение индекса сайта (IndexGeneration).
+ */
+@Slf4j
+@Component
+public class InvertedIndex {
+    private final List<PostingStorage> postingStorages;
+    private final IndexingSettings indexingSettings;
+    private final IndexGeneration indexGeneration;
+    private final Map<Integer, LoadedSite> sites = new ConcurrentHashMap<>();
+
+    public InvertedIndex(List<PostingStorage> postingStorages, IndexingSettings indexingSettings,
+                         IndexGeneration indexGeneration) {
+        this.postingStorages = postingStorages;
+        this.indexingSettings = indexingSettings;
+        this.indexGeneration = indexGeneration;
+    }
+
+    /**
+     * Списки вхождений лемм сайта
+     * @param siteId - id сайта
+     * @param lemmas - леммы
+     * @return списки в порядке лемм, пустой список если хотя бы одной леммы нет в индексе
+     */
+    public List<PostingList> postings(int siteId, List<String> lemmas) {
+        Map<String, PostingList> site = getSite(siteId);
+        List<PostingList> lists = new ArrayList<>(lemmas.size());
+        for (String lemma : lemmas) {
+            PostingList list = site.get(lemma);
+            if (list == null) {
+                return List.of();
+            }
+            lists.add(list);
+        }
+        return lists;
+    }
+
+    private Map<String, PostingList> getSite(int siteId) {
+        long generation = indexGeneration.get(siteId);
+        LoadedSite site = sites.get(siteId);
+        if (site == null || site.generation() != generation) {
+            site = sites.compute(siteId, (k, old) -> old != null && old.generation() == generation
+                    ? old : new LoadedSite(generation, load(siteId)));
+        }
+        return site.postings();
+    }
+
+    private Map<String, PostingList> load(int siteId) {
+        long startTime = System.currentTimeMillis();
+        Map<String, PostingList> site = PostingStorage.select(postingStorages,
+                indexingSettings.getPostings().getLayout()).readSite(siteId);
+        long count = site.values().stream().mapToLong(PostingList::size).sum();
+        log.info("In-memory index for siteId: {} loaded, lemmas: {} postings: {} time: {} ms",
+                siteId, site.size(), count, System.currentTimeMillis() - startTime);
+        return site;
+    }
+
+    private record LoadedSite(long generation, Map<String, PostingList> postings) {
+    }
+}
@@ -0,0 +1,208 @@
+package searchengine.index;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Форматы хранения BlobPostingStorage, все числа - varint:
+ * <pre>
+ * сегмент списка вхождений: количество, затем для каждого вхождения
+ *     разность pageId с предыдущим, ранг
+ * вхождения страницы:       количество, затем для каждой леммы по возрастанию lemma_id
+ *     разность lemma_id с предыдущим, ранг, длина позиций, позиции (LemmaOccurrences.encode)
+ * ранг: целый неотрицательный - (rank << 1), иначе 1 и 4 байта Float.floatToIntBits
+ * </pre>
+ */
+final class PostingCodec {
+
+    private PostingCodec() {
+    }
+
+    /**
+     * Кодирует часть списка вхождений [from, to), pageId по возрастанию
+     */
+    static byte[] encodeSegment(int[] pageIds, float[] ranks, int from, int to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((to - from) * 3 + 4);
+        writeVarInt(out, to - from);
+        int prev = 0;
+        for (int i = from; i < to; i++) {
+            writeVarInt(out, pageIds[i] - prev);
+            writeRank(out, ranks[i]);
+            prev = pageIds[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Добавляет вхождения сегмента в сборщик
+     */
+    static void decodeSegment(byte[] data, Postings postings) {
+        int[] cursor = {0};
+        int count = readVarInt(data, cursor);
+        int pageId = 0;
+        for (int i = 0; i < count; i++) {
+            pageId += readVarInt(data, cursor);
+            postings.add(pageId, readRank(data, cursor));
+        }
+    }
+
+    /**
+     * Кодирует вхождения лемм страницы, lemmaIds по возрастанию
+     */
+    static byte[] encodePage(int[] lemmaIds, float[] ranks, byte[][] positions) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(lemmaIds.length * 8 + 4);
+        writeVarInt(out, lemmaIds.length);
+        int prev = 0;
+        for (int i = 0; i < lemmaIds.length; i++) {
+            writeVarInt(out, lemmaIds[i] - prev);
+            writeRank(out, ranks[i]);
+            byte[] bytes = positions[i] == null ? new byte[0] : positions[i];
+            writeVarInt(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+            prev = lemmaIds[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Обработчик вхождения леммы на странице
+     */
+    @FunctionalInterface
+    interface PageEntryConsumer {
+        void accept(int lemmaId, float rank, byte[] positions);
+    }
+
+    static void decodePage(byte[] data, PageEntryConsumer consumer) {
+        int[] cursor = {0};
+        int count = readVarInt(data, cursor);
+        int lemmaId = 0;
+        for (int i = 0; i < count; i++) {
+            lemmaId += readVarInt(data, cursor);
+            float rank = readRank(data, cursor);
+            int length = readVarInt(data, cursor);
+            byte[] positions = Arrays.copyOfRange(data, cursor[0], cursor[0] + length);
+            cursor[0] += length;
+            consumer.accept(lemmaId, rank, positions);
+        }
+    }
+
+    private static void writeRank(ByteArrayOutputStream out, float rank) {
+        int whole = (int) rank;
+        if (whole == rank && whole >= 0 && whole < (1 << 30)) {
+            writeVarInt(out, whole << 1);
+        } else {
+            writeVarInt(out, 1);
+            int bits = Float.floatToIntBits(rank);
+            out.write(bits >>> 24);
+            out.write(bits >>> 16);
+            out.write(bits >>> 8);
+            out.write(bits);
+        }
+    }
+
+    private static float readRank(byte[] data, int[] cursor) {
+        int code = readVarInt(data, cursor);
+        if ((code & 1) == 0) {
+            return code >>> 1;
+        }
+        int p = cursor[0];
+        cursor[0] += 4;
+        return Float.intBitsToFloat((data[p] & 0xFF) << 24 | (data[p + 1] & 0xFF) << 16
+                | (data[p + 2] & 0xFF) << 8 | (data[p + 3] & 0xFF));
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Вхождения одной леммы из нескольких сегментов: сегменты, дописанные при инкрементальной
+     * индексации, могут идти не по порядку pageId, поэтому при необходимости список сортируется
+     */
+    static final class Postings {
+        private int[] pageIds = new int[16];
+        private float[] ranks = new float[16];
+        private int size;
+        private boolean sorted = true;
+
+        void add(int pageId, float rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            if (size > 0 && pageIds[size - 1] >= pageId) {
+                sorted = false;
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+        }
+
+        /**
+         * Удаляет вхождение страницы
+         * @return true если оно было
+         */
+        boolean remove(int pageId) {
+            for (int i = 0; i < size; i++) {
+                if (pageIds[i] == pageId) {
+                    System.arraycopy(pageIds, i + 1, pageIds, i, size - i - 1);
+                    System.arraycopy(ranks, i + 1, ranks, i, size - i - 1);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] pageIds() {
+            sort();
+            return pageIds;
+        }
+
+        float[] ranks() {
+            sort();
+            return ranks;
+        }
+
+        PostingList build() {
+            sort();
+            return new PostingList(Arrays.copyOf(pageIds, size), Arrays.copyOf(ranks, size));
+        }
+
+        private void sort() {
+            if (sorted) {
+                return;
+            }
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = (long) pageIds[i] << 32 | (Float.floatToIntBits(ranks[i]) & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < size; i++) {
+                pageIds[i] = (int) (packed[i] >>> 32);
+                ranks[i] = Float.intBitsToFloat((int) packed[i]);
+            }
+            sorted = true;
+        }
+    }
+}
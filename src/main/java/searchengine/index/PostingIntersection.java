@@ -0,0 +1,179 @@
+package searchengine.index;
+
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Пересечение (AND) списков вхождений галопирующим поиском.
+ * Первым в списке должен идти самый короткий список - по нему идёт перебор кандидатов.
+ * Совпадения не накапливаются, а сразу передаются обработчику - память не зависит от числа совпадений.
+ * forEachCompetitiveMatch дополнительно пропускает блоки (PostingList.BLOCK_SIZE) самого короткого
+ * списка, если верхняя граница оценки их страниц по максимальным рангам блоков не выше порога
+ * отбора (block-max): страницы таких блоков не попали бы в K лучших.
+ * Перебор проверяет прерывание потока на каждом блоке кандидатов (PostingList.BLOCK_SIZE) и при
+ * прерывании заканчивается досрочно: так отменённое по сроку ранжирование освобождает поток.
+ */
+public final class PostingIntersection {
+
+    private PostingIntersection() {
+    }
+
+    /**
+     * Обработчик совпадения
+     */
+    @FunctionalInterface
+    public interface MatchConsumer {
+        /**
+         * @param pageId - страница, на которой встречаются все леммы
+         * @param ranks  - ранги лемм на странице в порядке списков; массив переиспользуется между вызовами
+         */
+        void accept(int pageId, float[] ranks);
+    }
+
+    /**
+     * Верхняя граница оценки страницы
+     */
+    @FunctionalInterface
+    public interface ScoreBound {
+        /**
+         * @param maxRanks - максимальные ранги лемм в порядке списков
+         * @return оценка, которую не может превысить страница с рангами не выше maxRanks
+         */
+        double bound(float[] maxRanks);
+    }
+
+    /**
+     * Число совпадений
+     * @param count       - количество совпадений
+     * @param approximate - блоки пропускались, count оценён по просмотренной части
+     */
+    public record Matches(int count, boolean approximate) {
+    }
+
+    /**
+     * Перебирает страницы, на которых встречаются все леммы
+     * @param lists    - списки вхождений, первый - самый редкий
+     * @param consumer - обработчик совпадений
+     * @return количество совпадений
+     */
+    public static int forEachMatch(List<PostingList> lists, MatchConsumer consumer) {
+        int count = lists.size();
+        if (count == 0) {
+            return 0;
+        }
+        PostingList lead = lists.get(0);
+        float[] ranks = new float[count];
+        int[] positions = new int[count];
+        int matches = 0;
+        int nextCheck = PostingList.BLOCK_SIZE;
+
+        int i = 0;
+        candidates:
+        while (i < lead.size()) {
+            if (i >= nextCheck) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                nextCheck = i + PostingList.BLOCK_SIZE;
+            }
+            int target = lead.pageId(i);
+            for (int l = 1; l < count; l++) {
+                PostingList list = lists.get(l);
+                int pos = list.advance(positions[l], target);
+                positions[l] = pos;
+                if (pos == list.size()) {
+                    break candidates;
+                }
+                int found = list.pageId(pos);
+                if (found != target) {
+                    i = lead.advance(i + 1, found);
+                    continue candidates;
+                }
+            }
+            ranks[0] = lead.rank(i);
+            for (int l = 1; l < count; l++) {
+                ranks[l] = lists.get(l).rank(positions[l]);
+            }
+            consumer.accept(target, ranks);
+            matches++;
+            i++;
+        }
+        return matches;
+    }
+
+    /**
+     * Перебирает страницы, на которых встречаются все леммы, пропуская блоки самого короткого списка,
+     * страницы которых не могут превысить порог. Для пропущенных блоков совпадения не перебираются,
+     * поэтому их число оценивается по доле совпадений в просмотренной части; для одного списка оно точное
+     * @param lists     - списки вхождений, первый - самый редкий
+     * @param bound     - верхняя граница оценки по максимальным рангам
+     * @param threshold - текущий порог: оценка худшей из отобранных страниц
+     * @param consumer  - обработчик совпадений
+     * @return количество совпадений, оценка (approximate) если блоки пропускались
+     */
+    public static Matches forEachCompetitiveMatch(List<PostingList> lists, ScoreBound bound, DoubleSupplier threshold,
+                                              MatchConsumer consumer) {
+        int count = lists.size();
+        if (count == 0) {
+            return new Matches(0, false);
+        }
+        PostingList lead = lists.get(0);
+        float[] ranks = new float[count];
+        float[] maxRanks = new float[count];
+        int[] positions = new int[count];
+        int matches = 0;
+        int skipped = 0;
+        int checkedBlock = -1;
+
+        int i = 0;
+        candidates:
+        while (i < lead.size()) {
+            int block = lead.block(i);
+            int blockEnd = lead.blockEnd(block);
+            if (block != checkedBlock) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                checkedBlock = block;
+                maxRanks[0] = lead.blockMaxRank(block);
+                int lastPageId = lead.pageId(blockEnd - 1);
+                for (int l = 1; l < count; l++) {
+                    maxRanks[l] = lists.get(l).maxRank(positions[l], lastPageId);
+                }
+                if (bound.bound(maxRanks) < threshold.getAsDouble()) {
+                    skipped += blockEnd - i;
+                    i = blockEnd;
+                    continue;
+                }
+            }
+            while (i < blockEnd) {
+                int target = lead.pageId(i);
+                for (int l = 1; l < count; l++) {
+                    PostingList list = lists.get(l);
+                    int pos = list.advance(positions[l], target);
+                    positions[l] = pos;
+                    if (pos == list.size()) {
+                        break candidates;
+                    }
+                    int found = list.pageId(pos);
+                    if (found != target) {
+                        i = lead.advance(i + 1, found);
+                        continue candidates;
+                    }
+                }
+                ranks[0] = lead.rank(i);
+                for (int l = 1; l < count; l++) {
+                    ranks[l] = lists.get(l).rank(positions[l]);
+                }
+                consumer.accept(target, ranks);
+                matches++;
+                i++;
+            }
+        }
+        if (skipped == 0) {
+            return new Matches(matches, false);
+        }
+        int evaluated = Math.max(1, lead.size() - skipped);
+        return new Matches(matches + (int) Math.round((double) skipped * matches / evaluated), true);
+    }
+}
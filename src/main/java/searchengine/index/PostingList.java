@@ -0,0 +1,130 @@
+package searchengine.index;
+
+import java.util.Arrays;
+
+/**
+ * Список вхождений леммы: отсортированные по возрастанию pageId и ранги (rank_index) для них.
+ * Хранится в примитивных массивах, без объектов Index на каждую запись.
+ * Список разбит на блоки по BLOCK_SIZE вхождений, для каждого блока хранится максимальный ранг -
+ * по нему отбор лучших страниц пропускает блоки, страницы которых не могут попасть в выдачу.
+ */
+public class PostingList {
+    public static final int BLOCK_SIZE = 128;
+    private static final int BLOCK_SHIFT = 7;
+
+    private final int[] pageIds;
+    private final float[] ranks;
+    private final float[] blockMaxRanks;
+
+    public PostingList(int[] pageIds, float[] ranks) {
+        if (pageIds.length != ranks.length) {
+            throw new IllegalArgumentException("pageIds.length != ranks.length");
+        }
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+        this.blockMaxRanks = new float[(pageIds.length + BLOCK_SIZE - 1) >> BLOCK_SHIFT];
+        for (int i = 0; i < ranks.length; i++) {
+            int block = i >> BLOCK_SHIFT;
+            blockMaxRanks[block] = Math.max(blockMaxRanks[block], ranks[i]);
+        }
+    }
+
+    public int size() {
+        return pageIds.length;
+    }
+
+    public int pageId(int i) {
+        return pageIds[i];
+    }
+
+    public float rank(int i) {
+        return ranks[i];
+    }
+
+    /**
+     * Номер блока, в котором лежит позиция i
+     */
+    public int block(int i) {
+        return i >> BLOCK_SHIFT;
+    }
+
+    /**
+     * Позиция за последним элементом блока
+     */
+    public int blockEnd(int block) {
+        return Math.min((block + 1) << BLOCK_SHIFT, pageIds.length);
+    }
+
+    public float blockMaxRank(int block) {
+        return blockMaxRanks[block];
+    }
+
+    /**
+     * Верхняя граница ранга для pageId из диапазона [pageId(from), toPageId]: максимум по блокам,
+     * которые пересекаются с диапазоном
+     * @param from      - позиция, с которой начинается диапазон
+     * @param toPageId  - последний pageId диапазона
+     * @return максимальный ранг, 0 если с позиции from элементов нет
+     */
+    public float maxRank(int from, int toPageId) {
+        float max = 0;
+        for (int block = block(from); block < blockMaxRanks.length; block++) {
+            max = Math.max(max, blockMaxRanks[block]);
+            if (pageIds[blockEnd(block) - 1] >= toPageId) {
+                break;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Галопирующий поиск: позиция первого элемента с pageId >= target, начиная с from
+     * @param from   - позиция, с которой начинается поиск
+     * @param target - искомый pageId
+     * @return позиция или size(), если такого элемента нет
+     */
+    public int advance(int from, int target) {
+        int size = pageIds.length;
+        if (from >= size || pageIds[from] >= target) {
+            return from;
+        }
+        int step = 1;
+        int low = from;
+        int high = from + step;
+        while (high < size && pageIds[high] < target) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        high = Math.min(high, size - 1);
+        if (pageIds[high] < target) {
+            return size;
+        }
+        int pos = Arrays.binarySearch(pageIds, low + 1, high + 1, target);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    /**
+     * Сборщик списка вхождений, pageId добавляются в порядке возрастания
+     */
+    public static class Builder {
+        private int[] pageIds = new int[8];
+        private float[] ranks = new float[8];
+        private int size;
+
+        public Builder add(int pageId, float rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+            return this;
+        }
+
+        public PostingList build() {
+            return new PostingList(Arrays.copyOf(pageIds, size), Arrays.copyOf(ranks, size));
+        }
+    }
+}
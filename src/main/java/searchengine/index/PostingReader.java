@@ -0,0 +1,43 @@
+package searchengine.index;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+import searchengine.lemma.LemmaOccurrences;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтение вхождений без сущностей Index: списки вхождений лемм для поиска по БД
+ * (search-settings.engine: database) и позиции лемм на странице для сниппетов.
+ * Читает из хранилища indexing-settings.postings.layout (PostingStorage).
+ */
+@Component
+@RequiredArgsConstructor
+public class PostingReader {
+    private final List<PostingStorage> postingStorages;
+    private final IndexingSettings indexingSettings;
+
+    /**
+     * Список вхождений леммы
+     * @param lemmaId - id леммы
+     */
+    public PostingList read(int lemmaId) {
+        return getPostingStorage().read(lemmaId);
+    }
+
+    /**
+     * Вхождения лемм на странице
+     * @param pageId - id страницы
+     * @param lemmas - леммы
+     * @return лемма -> вхождения; леммы без сохранённых позиций в результат не попадают
+     */
+    public Map<String, LemmaOccurrences> readPositions(int pageId, List<String> lemmas) {
+        return getPostingStorage().readPositions(pageId, lemmas);
+    }
+
+    private PostingStorage getPostingStorage() {
+        return PostingStorage.select(postingStorages, indexingSettings.getPostings().getLayout());
+    }
+}
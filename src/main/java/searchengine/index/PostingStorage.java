@@ -0,0 +1,96 @@
+package searchengine.index;
+
+import searchengine.config.IndexingSettings;
+import searchengine.lemma.LemmaOccurrences;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранилище вхождений лемм. Реализации - Spring-компоненты, хранилище выбирается настройкой
+ * indexing-settings.postings.layout:
+ * ROWS - строка index_melnikov на каждую пару (страница, лемма) (RowPostingStorage),
+ * BLOBS - сжатые списки вхождений по леммам и сжатые вхождения по страницам (BlobPostingStorage).
+ * Данные разных хранилищ не переносятся: после смены настройки сайты нужно переиндексировать.
+ */
+public interface PostingStorage {
+
+    IndexingSettings.Postings.Layout getLayout();
+
+    /**
+     * Записывает вхождения лемм страниц; страницы записываются целиком, вхождений этих страниц
+     * в хранилище ещё нет
+     * @param postings - вхождения
+     */
+    void write(List<Posting> postings);
+
+    /**
+     * Удаляет вхождения страницы и уменьшает frequency её лемм
+     * @param siteId - id сайта
+     * @param pageId - id страницы
+     */
+    void removePage(int siteId, int pageId);
+
+    /**
+     * Удаляет вхождения всех страниц сайта, вызывается до удаления лемм и страниц сайта
+     * @param siteId - id сайта
+     */
+    void removeSite(int siteId);
+
+    /**
+     * Страницы сайта, вхождения которых записаны, а page.lemma_count не заполнен (запись была прервана)
+     * @param siteId - id сайта
+     */
+    List<Integer> findUnfinishedPages(int siteId);
+
+    /**
+     * Список вхождений леммы
+     * @param lemmaId - id леммы
+     */
+    PostingList read(int lemmaId);
+
+    /**
+     * Списки вхождений всех лемм сайта
+     * @param siteId - id сайта
+     * @return лемма -> список вхождений
+     */
+    Map<String, PostingList> readSite(int siteId);
+
+    /**
+     * Вхождения лемм на странице
+     * @param pageId - id страницы
+     * @param lemmas - леммы
+     * @return лемма -> вхождения; леммы без сохранённых позиций в результат не попадают
+     */
+    Map<String, LemmaOccurrences> readPositions(int pageId, List<String> lemmas);
+
+    /**
+     * Приводит хранилище сайта к компактному виду после индексации
+     * @param siteId - id сайта
+     */
+    default void compact(int siteId) {
+    }
+
+    /**
+     * Хранилище по настройке
+     * @param storages - все хранилища
+     * @param layout   - indexing-settings.postings.layout
+     */
+    static PostingStorage select(List<PostingStorage> storages, IndexingSettings.Postings.Layout layout) {
+        return storages.stream()
+                .filter(storage -> storage.getLayout() == layout)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Posting storage not found: " + layout));
+    }
+
+    /**
+     * Вхождение леммы на странице
+     * @param siteId    - id сайта
+     * @param pageId    - id страницы
+     * @param lemmaId   - id леммы
+     * @param rank      - ранг (rank_index)
+     * @param positions - вхождения в текст, LemmaOccurrences.encode()
+     */
+    record Posting(int siteId, int pageId, int lemmaId, float rank, byte[] positions) {
+    }
+}
@@ -0,0 +1,127 @@
+package searchengine.index;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+import searchengine.lemma.LemmaOccurrences;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранилище вхождений в таблице index_melnikov: строка на каждую пару (страница, лемма)
+ */
+@Component
+public class RowPostingStorage implements PostingStorage {
+    private static final String INSERT_INDEX = "insert into search_engine.index_melnikov(page_id, lemma_id, rank_index, positions) values ";
+    private static final String DECREMENT_LEMMAS = "update search_engine.lemma l " +
+            "join search_engine.index_melnikov i on i.lemma_id = l.lemma_id " +
+            "set l.frequency = l.frequency - 1 where i.page_id = ?";
+    private static final String SELECT_POSTINGS = "select page_id, rank_index from search_engine.index_melnikov " +
+            "where lemma_id = ? order by page_id";
+    private static final String SELECT_SITE_POSTINGS = "select l.lemma, i.page_id, i.rank_index " +
+            "from search_engine.index_melnikov i join search_engine.lemma l on l.lemma_id = i.lemma_id " +
+            "where l.site_id = ? order by i.lemma_id, i.page_id";
+    private static final String SELECT_POSITIONS = "select l.lemma, i.positions from search_engine.index_melnikov i " +
+            "join search_engine.lemma l on l.lemma_id = i.lemma_id where i.page_id = ? and l.lemma in (";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingTemplate;
+    private final IndexingSettings indexingSettings;
+
+    public RowPostingStorage(DataSource dataSource, IndexingSettings indexingSettings) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingTemplate = new JdbcTemplate(dataSource);
+        this.streamingTemplate.setFetchSize(Integer.MIN_VALUE);     // потоковое чтение результата в MySQL
+        this.indexingSettings = indexingSettings;
+    }
+
+    @Override
+    public IndexingSettings.Postings.Layout getLayout() {
+        return IndexingSettings.Postings.Layout.ROWS;
+    }
+
+    @Override
+    public void write(List<Posting> postings) {
+        int batchSize = Math.max(1, indexingSettings.getBatchSize());
+        String row = "(?,?,?,?)";
+        for (int from = 0; from < postings.size(); from += batchSize) {
+            List<Posting> chunk = postings.subList(from, Math.min(from + batchSize, postings.size()));
+            Object[] args = new Object[chunk.size() * 4];
+            int i = 0;
+            for (Posting posting : chunk) {
+                args[i++] = posting.pageId();
+                args[i++] = posting.lemmaId();
+                args[i++] = posting.rank();
+                args[i++] = posting.positions();
+            }
+            jdbcTemplate.update(INSERT_INDEX + String.join(",", Collections.nCopies(chunk.size(), row)), args);
+        }
+    }
+
+    /**
+     * Транзакцию открывает вызывающий (BulkIndexWriter.removePage)
+     */
+    @Override
+    public void removePage(int siteId, int pageId) {
+        jdbcTemplate.update(DECREMENT_LEMMAS, pageId);
+        jdbcTemplate.update("delete from search_engine.index_melnikov where page_id = ?", pageId);
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+        jdbcTemplate.update("delete i from search_engine.index_melnikov i " +
+                "join search_engine.lemma l on l.lemma_id = i.lemma_id where l.site_id = ?", siteId);
+    }
+
+    @Override
+    public List<Integer> findUnfinishedPages(int siteId) {
+        return jdbcTemplate.queryForList("select distinct p.page_id from search_engine.page p " +
+                "join search_engine.index_melnikov i on i.page_id = p.page_id " +
+                "where p.site_id = ? and p.lemma_count is null", Integer.class, siteId);
+    }
+
+    @Override
+    public PostingList read(int lemmaId) {
+        PostingList.Builder builder = new PostingList.Builder();
+        streamingTemplate.query(SELECT_POSTINGS, rs -> {
+            builder.add(rs.getInt(1), rs.getFloat(2));
+        }, lemmaId);
+        return builder.build();
+    }
+
+    @Override
+    public Map<String, PostingList> readSite(int siteId) {
+        Map<String, PostingList.Builder> builders = new HashMap<>();
+        streamingTemplate.query(SELECT_SITE_POSTINGS, rs -> {
+            builders.computeIfAbsent(rs.getString(1), k -> new PostingList.Builder())
+                    .add(rs.getInt(2), rs.getFloat(3));
+        }, siteId);
+        Map<String, PostingList> site = new HashMap<>(builders.size() * 4 / 3 + 1);
+        builders.forEach((lemma, builder) -> site.put(lemma, builder.build()));
+        return site;
+    }
+
+    @Override
+    public Map<String, LemmaOccurrences> readPositions(int pageId, List<String> lemmas) {
+        Map<String, LemmaOccurrences> occurrences = new HashMap<>();
+        if (lemmas.isEmpty()) {
+            return occurrences;
+        }
+        List<Object> args = new ArrayList<>(lemmas.size() + 1);
+        args.add(pageId);
+        args.addAll(lemmas);
+        String sql = SELECT_POSITIONS + String.join(",", Collections.nCopies(lemmas.size(), "?")) + ")";
+        jdbcTemplate.query(sql, rs -> {
+            byte[] positions = rs.getBytes(2);
+            if (positions != null) {
+                occurrences.put(rs.getString(1), LemmaOccurrences.decode(positions));
+            }
+        }, args.toArray());
+        return occurrences;
+    }
+}
@@ -0,0 +1,112 @@
+package searchengine.index;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.model.Lemma;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтение для поиска без сущностей JPA: только нужные поиску столбцы lemma, page и site,
+ * в persistence context ничего не попадает и связи сущностей не подгружаются.
+ * Объекты Lemma, которые возвращает findLemmas, - обычные объекты, не управляемые JPA.
+ */
+@Component
+public class SearchReader {
+    private static final String SELECT_LEMMAS = "select lemma_id, site_id, lemma, frequency from search_engine.lemma " +
+            "where site_id in (%s) and lemma in (%s)";
+    private static final String SELECT_PAGES = "select page_id, site_id, path, title from search_engine.page " +
+            "where page_id in (%s)";
+    private static final String SELECT_SITES = "select site_id, url, name from search_engine.site order by site_id";
+    private static final String COUNT_PAGES = "select site_id, count(*) from search_engine.page " +
+            "where site_id in (%s) group by site_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SearchReader(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Леммы запроса на всех сайтах поиска одним запросом
+     * @param siteIds - id сайтов
+     * @param lemmas  - леммы
+     * @return найденные леммы, не управляемые JPA
+     */
+    public List<Lemma> findLemmas(Collection<Integer> siteIds, Collection<String> lemmas) {
+        if (siteIds.isEmpty() || lemmas.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object> args = new ArrayList<>(siteIds.size() + lemmas.size());
+        args.addAll(siteIds);
+        args.addAll(lemmas);
+        String sql = String.format(SELECT_LEMMAS, placeholders(siteIds.size()), placeholders(lemmas.size()));
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Lemma lemma = new Lemma(rs.getInt(2), rs.getString(3), rs.getInt(4));
+            lemma.setLemmaId(rs.getInt(1));
+            return lemma;
+        }, args.toArray());
+    }
+
+    /**
+     * Пути и заголовки страниц одним запросом
+     * @param pageIds - id страниц
+     * @return id страницы -> страница; удалённых страниц в результате нет
+     */
+    public Map<Integer, PageHeader> findPages(Collection<Integer> pageIds) {
+        Map<Integer, PageHeader> pages = new HashMap<>(pageIds.size() * 4 / 3 + 1);
+        if (pageIds.isEmpty()) {
+            return pages;
+        }
+        jdbcTemplate.query(String.format(SELECT_PAGES, placeholders(pageIds.size())), rs -> {
+            pages.put(rs.getInt(1), new PageHeader(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4)));
+        }, pageIds.toArray());
+        return pages;
+    }
+
+    /**
+     * Все сайты по возрастанию site_id
+     */
+    public List<SiteHeader> findAllSites() {
+        return jdbcTemplate.query(SELECT_SITES, (rs, rowNum) ->
+                new SiteHeader(rs.getInt(1), rs.getString(2), rs.getString(3)));
+    }
+
+    /**
+     * Количество страниц сайтов одним запросом
+     * @param siteIds - id сайтов
+     * @return id сайта -> количество страниц; сайтов без страниц в результате нет
+     */
+    public Map<Integer, Integer> countPages(Collection<Integer> siteIds) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        if (siteIds.isEmpty()) {
+            return counts;
+        }
+        jdbcTemplate.query(String.format(COUNT_PAGES, placeholders(siteIds.size())), rs -> {
+            counts.put(rs.getInt(1), rs.getInt(2));
+        }, siteIds.toArray());
+        return counts;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Страница выдачи без текста
+     */
+    public record PageHeader(int pageId, int siteId, String path, String title) {
+    }
+
+    /**
+     * Сайт выдачи
+     */
+    public record SiteHeader(int siteId, String url, String name) {
+    }
+}
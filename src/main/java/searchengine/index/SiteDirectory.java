@@ -0,0 +1,121 @@
+package searchengine.index;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш почти неизменных данных для поиска: таблица site целиком и количество страниц сайтов.
+ * Таблица site перечитывается одним запросом, когда истекает search-settings.cache.site-ttl-sec
+ * или после invalidate() (сайт добавлен, изменён или удалён). Количество страниц сайта действительно,
+ * пока не изменилось поколение индекса сайта (IndexGeneration); недостающие количества
+ * читаются одним запросом на все сайты.
+ */
+@Component
+@RequiredArgsConstructor
+public class SiteDirectory {
+    private final SearchReader searchReader;
+    private final IndexGeneration indexGeneration;
+    private final SearchSettings searchSettings;
+
+    private final Map<Integer, PageCount> pageCounts = new ConcurrentHashMap<>();
+    private volatile Sites sites;
+
+    /**
+     * Id сайтов по именам из конфигурации, в порядке списка
+     * @param names - имена сайтов
+     * @return id сайтов, которые есть в БД
+     */
+    public List<Integer> getSiteIds(Collection<String> names) {
+        Map<String, Integer> byName = getSites().byName();
+        return names.stream().map(byName::get).filter(siteId -> siteId != null).distinct().toList();
+    }
+
+    /**
+     * Сайты по id. Если каких-то сайтов нет в кэше, таблица site перечитывается один раз на весь вызов:
+     * сайт мог появиться после чтения таблицы
+     * @param siteIds - id сайтов
+     * @return id сайта -> сайт; сайтов, которых нет в БД, в результате нет
+     */
+    public Map<Integer, SearchReader.SiteHeader> getSites(Collection<Integer> siteIds) {
+        Map<Integer, SearchReader.SiteHeader> byId = getSites().byId();
+        if (!byId.keySet().containsAll(siteIds)) {
+            invalidate();
+            byId = getSites().byId();
+        }
+        Map<Integer, SearchReader.SiteHeader> found = new HashMap<>();
+        for (Integer siteId : siteIds) {
+            SearchReader.SiteHeader site = byId.get(siteId);
+            if (site != null) {
+                found.put(siteId, site);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Количество страниц сайтов; устаревшие и отсутствующие в кэше читаются одним запросом
+     * @param siteIds - id сайтов
+     * @return id сайта -> количество страниц
+     */
+    public Map<Integer, Integer> getPageCounts(Collection<Integer> siteIds) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        Map<Integer, Long> generations = new HashMap<>();
+        for (Integer siteId : siteIds) {
+            long generation = indexGeneration.get(siteId);
+            PageCount cached = pageCounts.get(siteId);
+            if (cached != null && cached.generation() == generation) {
+                counts.put(siteId, cached.count());
+            } else {
+                missing.add(siteId);
+                generations.put(siteId, generation);    // поколение до чтения, см. IndexGeneration
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Integer, Integer> loaded = searchReader.countPages(missing);
+            for (Integer siteId : missing) {
+                int count = loaded.getOrDefault(siteId, 0);
+                pageCounts.put(siteId, new PageCount(generations.get(siteId), count));
+                counts.put(siteId, count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Сбрасывает кэш таблицы site: она будет перечитана при следующем обращении
+     */
+    public void invalidate() {
+        sites = null;
+    }
+
+    private Sites getSites() {
+        Sites current = sites;
+        long now = System.currentTimeMillis();
+        if (current == null || now - current.loadedAt() > searchSettings.getCache().getSiteTtlSec() * 1000L) {
+            Map<Integer, SearchReader.SiteHeader> byId = new HashMap<>();
+            Map<String, Integer> byName = new HashMap<>();
+            for (SearchReader.SiteHeader site : searchReader.findAllSites()) {
+                byId.put(site.siteId(), site);
+                byName.putIfAbsent(site.name(), site.siteId());
+            }
+            current = new Sites(now, byId, byName);
+            sites = current;
+        }
+        return current;
+    }
+
+    private record Sites(long loadedAt, Map<Integer, SearchReader.SiteHeader> byId, Map<String, Integer> byName) {
+    }
+
+    private record PageCount(long generation, int count) {
+    }
+}
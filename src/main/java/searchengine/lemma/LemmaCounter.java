@@ -0,0 +1,69 @@
+package searchengine.lemma;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Счётчик лемм: открытая адресация, ключи в массиве строк, счётчики в int[] - без Integer
+ * и узлов HashMap на каждое увеличение. В Map переводится один раз, в конце разбора текста.
+ */
+final class LemmaCounter {
+    private String[] keys = new String[64];
+    private int[] counts = new int[64];
+    private int size;
+
+    /**
+     * Увеличивает счётчик леммы на 1
+     * @param lemma лемма
+     */
+    void increment(String lemma) {
+        if (size >= keys.length * 3 / 4) {
+            resize();
+        }
+        int mask = keys.length - 1;
+        int i = spread(lemma.hashCode()) & mask;
+        while (keys[i] != null) {
+            if (keys[i].equals(lemma)) {
+                counts[i]++;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = lemma;
+        counts[i] = 1;
+        size++;
+    }
+
+    Map<String, Integer> toMap() {
+        Map<String, Integer> map = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                map.put(keys[i], counts[i]);
+            }
+        }
+        return map;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new String[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) {
+                continue;
+            }
+            int i = spread(oldKeys[j].hashCode()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            counts[i] = oldCounts[j];
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
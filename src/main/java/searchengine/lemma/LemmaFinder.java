@@ -1,90 +1,87 @@
 package searchengine.lemma;
 
+import lombok.RequiredArgsConstructor;
 import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.stereotype.Component;
 
-import java.io.IOException;
 import java.util.*;
 
+/**
+ * Поиск лемм в тексте. Текст разбирается на слова потоково (Tokenizer), нормальные формы берутся
+ * из кэша NormalFormCache или словарей общего MorphologyService. Состояния между вызовами нет,
+ * поэтому один экземпляр используется всеми потоками.
+ */
+@Component
+@RequiredArgsConstructor
 public class LemmaFinder {
 
-    private final LuceneMorphology morphologyRus;
-    private final LuceneMorphology morphologyEng;
+    private final MorphologyService morphologyService;
+    private final NormalFormCache normalFormCache;
     private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ", "CONJ",
         "INT", "PREP", "ARTICLE", "PART"};
 
-    public static LemmaFinder getInstance() {
-        try {
-            LuceneMorphology morphologyRus = new RussianLuceneMorphology();
-            LuceneMorphology morphologyEng = new EnglishLuceneMorphology();
-            return new LemmaFinder(morphologyRus, morphologyEng);
-        } catch (IOException e) {//
-        }
-        return null;
-    }
-
-    private LemmaFinder(LuceneMorphology luceneMorphologyRus,
-        LuceneMorphology luceneMorphologyEng) {
-        this.morphologyRus = luceneMorphologyRus;
-        this.morphologyEng = luceneMorphologyEng;
-    }
-
-    private LemmaFinder() {
-        throw new IllegalArgumentException("Disallow construct");
-    }
-
     /**
      * Метод разделяет текст на слова, находит все леммы и считает их количество.
      * @param text текст из которого будут выбираться леммы
      * @return ключ является леммой, а значение количеством найденных лемм
      */
     public Map<String, Integer> collectLemmas(String text) {
-        String[] words = splitWords(text, false);
+        LemmaCounter lemmas = new LemmaCounter();
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) {
+            String normalWord = getNormalWord(tokenizer.token(), tokenizer.script());
+            if (normalWord != null) {
+                lemmas.increment(normalWord);
+            }
+        }
+        return lemmas.toMap();
+    }
 
-        HashMap<String, Integer> lemmas = new HashMap<>();
-        for (String word : words) {
-            String normalWord = getNormalWord(word);
-            if (normalWord == null) {
-                continue;
+    /**
+     * Метод находит леммы текста и их вхождения: номер слова и смещение начала слова в тексте.
+     * Слова выделяются так же, как в collectLemmas, поэтому количество вхождений леммы совпадает.
+     * @param text текст из которого будут выбираться леммы
+     * @return ключ является леммой, а значение - её вхождениями
+     */
+    public Map<String, LemmaOccurrences> collectLemmaOccurrences(String text) {
+        HashMap<String, LemmaOccurrences> lemmas = new HashMap<>();
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) {
+            String normalWord = getNormalWord(tokenizer.token(), tokenizer.script());
+            if (normalWord != null) {
+                lemmas.computeIfAbsent(normalWord, k -> new LemmaOccurrences())
+                    .add(tokenizer.index(), tokenizer.start());
             }
-            lemmas.put(normalWord, lemmas.getOrDefault(normalWord, 0) + 1);
         }
         return lemmas;
     }
 
     public Map<LemmaItem, Integer> collectLemmasMap(String text) {
-        String[] words = splitWords(text, false);
-
         HashMap<LemmaItem, Integer> lemmas = new HashMap<>();
-        for (String word : words) {
-            String normalWord = getNormalWord(word);
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) {
+            String normalWord = getNormalWord(tokenizer.token(), tokenizer.script());
             if (normalWord == null) {
                 continue;
             }
-            lemmas.put(new LemmaItem(normalWord, word),
-                lemmas.getOrDefault(new LemmaItem(normalWord, word), 0) + 1);
+            lemmas.merge(new LemmaItem(normalWord, tokenizer.token().toString()), 1, Integer::sum);
         }
         return lemmas;
     }
 
     /**
-     * Метод разделяет текст на слова, находит все леммы и считает их количество.
+     * Метод разделяет текст на слова и находит леммы с номерами слов.
      * @param text текст из которого будут выбираться леммы
-     * @return ключ является леммой, а значение количеством найденных лемм
+     * @return ключ - номер слова в тексте (с 1), значение - лемма
      */
     public Map<Integer, String> collectLemmasList(String text) {
-        String[] words = splitWords(text, true);
-
         HashMap<Integer, String> lemmas = new HashMap<>();
-        int i = 0;
-        for (String word : words) {
-            i++;
-            String normalWord = getNormalWord(word);
-            if (normalWord == null) {
-                continue;
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) {
+            String normalWord = getNormalWord(tokenizer.token(), tokenizer.script());
+            if (normalWord != null) {
+                lemmas.put(tokenizer.index() + 1, normalWord);
             }
-            lemmas.put(i, normalWord);
         }
         return lemmas;
     }
@@ -95,15 +92,13 @@ public class LemmaFinder {
      * @return лист лемм
      */
     public List<String> getLemmaList(String text) {
-        String[] words = splitWords(text, true);
-
         List<String> lemmas = new ArrayList<>();
-        for (String word : words) {
-            String normalWord = getNormalWord(word);
-            if (normalWord == null) {
-                continue;
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) {
+            String normalWord = getNormalWord(tokenizer.token(), tokenizer.script());
+            if (normalWord != null) {
+                lemmas.add(normalWord);
             }
-            lemmas.add(normalWord);
         }
         return lemmas;
     }
@@ -114,19 +109,36 @@ public class LemmaFinder {
      * @return лемма
      */
     public String getLemma(String word) {
-        return getNormalWord(word);
+        return getNormalWord(word, Tokenizer.scriptOf(word));
+    }
+
+    /**
+     * Нормальная форма слова: из кэша, при промахе - из словарей морфологии
+     * @param word   слово
+     * @param script алфавит слова
+     * @return лемма или null для служебных частей речи и неизвестных слов
+     */
+    private String getNormalWord(CharSequence word, Tokenizer.Script script) {
+        String cached = normalFormCache.get(word);
+        if (cached != null) {
+            return NormalFormCache.isNoLemma(cached) ? null : cached;
+        }
+        String text = word.toString();
+        String normalWord = findNormalWord(text, script);
+        normalFormCache.put(text, normalWord);
+        return normalWord;
     }
 
-    private String getNormalWord(String word) {
+    private String findNormalWord(String word, Tokenizer.Script script) {
         LuceneMorphology luceneMorphology;
         if (word.isBlank()) {
             return null;
         }
 
-        if (isRussian(word)) {
-            luceneMorphology = morphologyRus;
+        if (script == Tokenizer.Script.CYRILLIC) {
+            luceneMorphology = morphologyService.russian();
         } else {
-            luceneMorphology = morphologyEng;
+            luceneMorphology = morphologyService.english();
         }
         try {
             List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
@@ -144,28 +156,6 @@ public class LemmaFinder {
         return normalForms.get(0);
     }
 
-    private String[] splitWords(String text, boolean saveOriginal) {
-        String[] split;
-        if (saveOriginal) {
-            split = text.toLowerCase(Locale.ROOT)
-                .trim()
-                .split("\\s+");
-
-        } else {
-            split = text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^а-яa-z\\s])", " ")
-                .trim()
-                .split("\\s+");
-        }
-        return split;
-    }
-
-    private static boolean isRussian(String word) {
-        return word.chars()
-            .mapToObj(Character.UnicodeBlock::of)
-            .anyMatch(Character.UnicodeBlock.CYRILLIC::equals);
-    }
-
     private boolean hasParticleProperty(String wordBase) {
         for (String property : particlesNames) {
             if (wordBase.toUpperCase().contains(property)) {
@@ -0,0 +1,107 @@
+package searchengine.lemma;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Вхождения леммы в текст страницы: номер слова и смещение начала слова в символах.
+ * Хранится в index_melnikov.positions в сжатом виде: количество, затем пары разностей
+ * (номер слова, смещение) с предыдущим вхождением, каждое число - varint.
+ */
+public class LemmaOccurrences {
+    private int[] positions;
+    private int[] offsets;
+    private int size;
+
+    public LemmaOccurrences() {
+        this(4);
+    }
+
+    private LemmaOccurrences(int capacity) {
+        positions = new int[Math.max(1, capacity)];
+        offsets = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * Добавляет вхождение, вхождения добавляются по порядку текста
+     * @param position - номер слова в тексте
+     * @param offset   - смещение начала слова в символах
+     */
+    public void add(int position, int offset) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        positions[size] = position;
+        offsets[size] = offset;
+        size++;
+    }
+
+    public int count() {
+        return size;
+    }
+
+    public int position(int i) {
+        return positions[i];
+    }
+
+    public int offset(int i) {
+        return offsets[i];
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 3 + 2);
+        writeVarInt(out, size);
+        int prevPosition = 0;
+        int prevOffset = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarInt(out, positions[i] - prevPosition);
+            writeVarInt(out, offsets[i] - prevOffset);
+            prevPosition = positions[i];
+            prevOffset = offsets[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Восстанавливает вхождения из index_melnikov.positions
+     * @param data - сжатые вхождения
+     * @return вхождения, пустые если data == null
+     */
+    public static LemmaOccurrences decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return new LemmaOccurrences(1);
+        }
+        int[] cursor = {0};
+        int count = readVarInt(data, cursor);
+        LemmaOccurrences occurrences = new LemmaOccurrences(count);
+        int position = 0;
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            position += readVarInt(data, cursor);
+            offset += readVarInt(data, cursor);
+            occurrences.add(position, offset);
+        }
+        return occurrences;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,83 @@
+package searchengine.lemma;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.stereotype.Service;
+import searchengine.config.MorphologySettings;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+
+/**
+ * Словари морфологии, общие для всего приложения. Загружаются один раз - при старте или
+ * при первом обращении (morphology-settings.lazy). После загрузки объекты LuceneMorphology
+ * только читаются, поэтому их можно вызывать из любого числа потоков индексации и поиска.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MorphologyService {
+    private final MorphologySettings morphologySettings;
+
+    private volatile Dictionaries dictionaries;
+    @Getter
+    private long loadTimeMs;
+    @Getter
+    private long memoryBytes;       // прирост занятой памяти кучи при загрузке, оценка
+
+    @PostConstruct
+    private void init() {
+        if (!morphologySettings.isLazy()) {
+            get();
+        }
+    }
+
+    public LuceneMorphology russian() {
+        return get().russian();
+    }
+
+    public LuceneMorphology english() {
+        return get().english();
+    }
+
+    public boolean isLoaded() {
+        return dictionaries != null;
+    }
+
+    private Dictionaries get() {
+        Dictionaries loaded = dictionaries;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = dictionaries;
+                if (loaded == null) {
+                    loaded = load();
+                    dictionaries = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private Dictionaries load() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+        long startTime = System.currentTimeMillis();
+        try {
+            Dictionaries loaded = new Dictionaries(new RussianLuceneMorphology(), new EnglishLuceneMorphology());
+            loadTimeMs = System.currentTimeMillis() - startTime;
+            memoryBytes = Math.max(0, runtime.totalMemory() - runtime.freeMemory() - usedBefore);
+            log.info("Morphology dictionaries loaded, time: {} ms memory: ~{} MB",
+                    loadTimeMs, memoryBytes / (1024 * 1024));
+            return loaded;
+        } catch (IOException e) {
+            throw new IllegalStateException("Morphology dictionaries are not loaded: " + e.getMessage(), e);
+        }
+    }
+
+    private record Dictionaries(LuceneMorphology russian, LuceneMorphology english) {
+    }
+}
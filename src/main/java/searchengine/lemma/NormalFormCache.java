@@ -0,0 +1,242 @@
+package searchengine.lemma;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.MorphologySettings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш слово -> нормальная форма перед запросами к LuceneMorphology.
+ * Таблица разбита на сегменты с открытой адресацией (линейное пробирование) в массивах строк,
+ * без объектов-узлов на каждую запись; каждый сегмент блокируется отдельно. Когда сегмент заполнен,
+ * он очищается целиком - так размер кэша ограничен без учёта порядка обращений.
+ * Для служебных частей речи и слов без нормальной формы хранится пустая строка.
+ * Если задан morphology-settings.cache-file, кэш читается из файла при старте и сохраняется при остановке.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NormalFormCache {
+    private static final int SEGMENTS = 32;
+    private static final String NO_LEMMA = "";
+
+    private final MorphologySettings morphologySettings;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private Segment[] segments;
+
+    @PostConstruct
+    private void init() {
+        int perSegment = Math.max(16, morphologySettings.getCacheSize() / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        load();
+    }
+
+    @PreDestroy
+    private void destroy() {
+        save();
+    }
+
+    /**
+     * Нормальная форма слова из кэша
+     * @param word слово в нижнем регистре
+     * @return лемма, NO_LEMMA (пустая строка) если слово не даёт леммы, null если слова нет в кэше
+     */
+    public String get(CharSequence word) {
+        if (morphologySettings.getCacheSize() <= 0) {
+            return null;
+        }
+        int hash = hash(word);
+        String value = segment(hash).get(word, hash);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Запоминает нормальную форму слова
+     * @param word  слово в нижнем регистре
+     * @param lemma лемма или null, если слово не даёт леммы
+     */
+    public void put(String word, String lemma) {
+        if (morphologySettings.getCacheSize() <= 0) {
+            return;
+        }
+        int hash = hash(word);
+        evictions.add(segment(hash).put(word, lemma == null ? NO_LEMMA : lemma, hash));
+    }
+
+    public static boolean isNoLemma(String value) {
+        return value.isEmpty();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private Segment segment(int hash) {
+        return segments[(hash >>> 16) & (SEGMENTS - 1)];
+    }
+
+    private static int hash(CharSequence word) {
+        int h = 0;
+        for (int i = 0; i < word.length(); i++) {
+            h = 31 * h + word.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private void load() {
+        Path file = getFile();
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    String word = line.substring(0, tab);
+                    segment(hash(word)).put(word, line.substring(tab + 1), hash(word));
+                    count++;
+                }
+            }
+            log.info("Normal form cache loaded from {}, words: {} time: {} ms", file, count,
+                    System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            log.warn("Normal form cache is not loaded from {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void save() {
+        Path file = getFile();
+        if (file == null) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Segment segment : segments) {
+                segment.write(writer);
+            }
+            log.info("Normal form cache saved to {}, words: {}", file, size());
+        } catch (IOException e) {
+            log.warn("Normal form cache is not saved to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path getFile() {
+        String file = morphologySettings.getCacheFile();
+        return file == null || file.isBlank() || morphologySettings.getCacheSize() <= 0 ? null : Path.of(file);
+    }
+
+    /**
+     * Сегмент: открытая адресация, ключи и значения в параллельных массивах
+     */
+    private static final class Segment {
+        private final String[] keys;
+        private final String[] values;
+        private final int[] hashes;
+        private final int threshold;
+        private int size;
+
+        /**
+         * @param maxEntries - записей в сегменте до очистки; таблица больше него (заполнение не выше 3/4),
+         *                   запас нужен только для коротких цепочек пробирования
+         */
+        Segment(int maxEntries) {
+            int capacity = Integer.highestOneBit(Math.max(16, maxEntries * 4 / 3) - 1) << 1;
+            keys = new String[capacity];
+            values = new String[capacity];
+            hashes = new int[capacity];
+            threshold = maxEntries;
+        }
+
+        synchronized String get(CharSequence word, int hash) {
+            int mask = keys.length - 1;
+            for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (hashes[i] == hash && keys[i].contentEquals(word)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return количество вытесненных записей
+         */
+        synchronized int put(String word, String value, int hash) {
+            int evicted = 0;
+            if (size >= threshold) {
+                evicted = size;
+                Arrays.fill(keys, null);
+                Arrays.fill(values, null);
+                size = 0;
+            }
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != null) {
+                if (hashes[i] == hash && keys[i].equals(word)) {
+                    values[i] = value;
+                    return evicted;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = word;
+            values[i] = value;
+            hashes[i] = hash;
+            size++;
+            return evicted;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void write(BufferedWriter writer) throws IOException {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    writer.write(keys[i]);
+                    writer.write('\t');
+                    writer.write(values[i]);
+                    writer.newLine();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package searchengine.lemma;
+
+/**
+ * Потоковый разбор текста на слова за один проход по символам, без копий текста и регулярных
+ * выражений. Слово - непрерывная последовательность русских (а-я) или латинских (a-z) букв,
+ * как в прежнем разбиении replaceAll("[^а-яa-z\\s]", " ").split("\\s+") по тексту в нижнем регистре.
+ * Текущее слово в нижнем регистре лежит в переиспользуемом буфере, String не создаётся.
+ * <pre>
+ * Tokenizer tokenizer = new Tokenizer(text);
+ * while (tokenizer.next()) {
+ *     tokenizer.token(); tokenizer.start(); tokenizer.script();
+ * }
+ * </pre>
+ */
+public final class Tokenizer {
+
+    public enum Script {
+        CYRILLIC, LATIN, OTHER
+    }
+
+    private final CharSequence text;
+    private final StringBuilder token = new StringBuilder(32);
+    private int pos;
+    private int start;
+    private int index = -1;
+    private Script script = Script.OTHER;
+
+    public Tokenizer(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * Переход к следующему слову
+     * @return false если слов больше нет
+     */
+    public boolean next() {
+        int length = text.length();
+        while (pos < length && !isWordChar(Character.toLowerCase(text.charAt(pos)))) {
+            pos++;
+        }
+        if (pos == length) {
+            token.setLength(0);
+            return false;
+        }
+        start = pos;
+        token.setLength(0);
+        boolean cyrillic = false;
+        char c;
+        while (pos < length && isWordChar(c = Character.toLowerCase(text.charAt(pos)))) {
+            cyrillic |= c >= 'а';
+            token.append(c);
+            pos++;
+        }
+        script = cyrillic ? Script.CYRILLIC : Script.LATIN;
+        index++;
+        return true;
+    }
+
+    /**
+     * Текущее слово в нижнем регистре; содержимое меняется при следующем вызове next()
+     */
+    public CharSequence token() {
+        return token;
+    }
+
+    /**
+     * Смещение начала слова в тексте
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * Смещение конца слова в тексте (не включая)
+     */
+    public int end() {
+        return pos;
+    }
+
+    /**
+     * Номер слова в тексте, с 0
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * Алфавит слова: CYRILLIC, если в нём есть хотя бы одна русская буква
+     */
+    public Script script() {
+        return script;
+    }
+
+    /**
+     * Алфавит произвольной строки: CYRILLIC, если в ней есть хотя бы один символ кириллицы
+     * @param word слово
+     */
+    public static Script scriptOf(CharSequence word) {
+        Script result = Script.OTHER;
+        for (int i = 0; i < word.length(); i++) {
+            char c = Character.toLowerCase(word.charAt(i));
+            if (Character.UnicodeBlock.of(c) == Character.UnicodeBlock.CYRILLIC) {
+                return Script.CYRILLIC;
+            }
+            if (c >= 'a' && c <= 'z') {
+                result = Script.LATIN;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Символ слова: строчная русская или латинская буква
+     * @param c символ в нижнем регистре
+     */
+    public static boolean isWordChar(char c) {
+        return (c >= 'а' && c <= 'я') || (c >= 'a' && c <= 'z');
+    }
+}
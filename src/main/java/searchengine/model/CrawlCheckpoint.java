@@ -0,0 +1,47 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.sql.Timestamp;
+
+/**
+ * Контрольная точка индексации сайта: по ней прерванная индексация продолжается, а не начинается заново.
+ * Для этапа обхода хранятся отпечатки найденных ссылок и очередь необработанных ссылок,
+ * для этапа лемм достаточно этапа: необработанные страницы - страницы с пустым page.lemma_count
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "crawl_checkpoint", schema = "search_engine")
+public class CrawlCheckpoint {
+    @Id
+    @Column(name = "site_id")
+    private int siteId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "phase", length = 16)
+    private Phase phase;
+
+    @Lob
+    @Column(name = "visited", columnDefinition = "LONGBLOB")
+    private byte[] visited;             // CrawlFrontier.writeVisited()
+
+    @Lob
+    @Column(name = "pending", columnDefinition = "LONGBLOB")
+    private byte[] pending;             // ссылки очереди через "\n", gzip
+
+    @Column(name = "pending_count")
+    private int pendingCount;
+
+    @Column(name = "updated_at")
+    private Timestamp updatedAt;
+
+    public enum Phase {
+        CRAWL,      // обход сайта
+        LEMMAS      // обход закончен, идёт запись лемм вторым проходом
+    }
+}
@@ -29,11 +29,14 @@ public class Index {
     @Column(name = "rank_index", columnDefinition = "FLOAT")
     private double rank;
 
-    @ManyToOne
+    @Column(name = "positions", columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;           // вхождения леммы на странице, см. LemmaOccurrences
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "page_id", insertable = false, updatable = false)  //, insertable = false, updatable = false
     private Page pageByPageId;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "lemma_id", insertable = false, updatable = false) //, insertable = false, updatable = false
     private Lemma lemmaByLemmaId;
 
@@ -1,7 +1,6 @@
 package searchengine.model;
 
 import lombok.*;
-import org.hibernate.annotations.SQLInsert;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -13,8 +12,8 @@ import java.util.Objects;
 @RequiredArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "lemma", schema = "search_engine")
-@SQLInsert(sql = "insert into search_engine.lemma(frequency, lemma, site_id) values (?, ?, ?) on duplicate key update frequency = lemma.frequency + 1")
+@Table(name = "lemma", schema = "search_engine",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"site_id", "lemma"}))
 public class Lemma {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -34,7 +33,7 @@ public class Lemma {
     @OneToMany(mappedBy = "lemmaByLemmaId", cascade = CascadeType.ALL)
     private List<Index> indexByLemmaId = new ArrayList<>();
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", insertable = false, updatable = false) //, insertable = false, updatable = false
     private Site siteEBySiteId;
 
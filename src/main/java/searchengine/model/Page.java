@@ -33,14 +33,26 @@ public class Page {                            // implements Serializable
     private int code;
 
     @NonNull
-    @Column(columnDefinition = "MEDIUMTEXT")
-    private String content;
+    @Transient
+    private String content;             // текст страницы, хранится в page_content (PageContentStore)
 
     @NonNull
     @Column(name = "title", length = 255)
     private String title;
 
-    @ManyToOne
+    @Column(name = "etag", length = 255)
+    private String etag;                // ETag из ответа сервера
+
+    @Column(name = "last_modified", length = 64)
+    private String lastModified;        // Last-Modified из ответа сервера
+
+    @Column(name = "content_hash")
+    private Long contentHash;           // хэш текста страницы
+
+    @Column(name = "lemma_count")
+    private Integer lemmaCount;         // длина страницы в леммах, заполняется при записи индексов
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", insertable = false, updatable = false)   //
     private Site siteEBySiteId;
 
@@ -53,12 +65,12 @@ public class Page {                            // implements Serializable
         if (o == null || getClass() != o.getClass()) return false;
         Page page = (Page) o;
         return pageId == page.pageId && siteId == page.siteId && code == page.code
-                && path.equals(page.path) && content.equals(page.content);
+                && path.equals(page.path);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(pageId, siteId, path, code, content);
+        return Objects.hash(pageId, siteId, path, code);
     }
 
     @Override
@@ -68,7 +80,6 @@ public class Page {                            // implements Serializable
                 ", siteId=" + siteId +
                 ", path='" + path + '\'' +
                 ", code=" + code +
-                ", content(trim by 100)='" + content.substring(0, 30) + '\'' +
                 '}';
     }
 }
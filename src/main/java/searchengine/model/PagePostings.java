@@ -0,0 +1,31 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * Вхождения всех лемм страницы для indexing-settings.postings.layout: blobs: id лемм, ранги
+ * и позиции в одной строке (см. PostingCodec). По ним строятся сниппеты и удаляются вхождения
+ * страницы из списков лемм. Пишется и читается через BlobPostingStorage
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "page_postings", schema = "search_engine",
+        indexes = @javax.persistence.Index(columnList = "site_id"))
+public class PagePostings {
+    @Id
+    @Column(name = "page_id")
+    private int pageId;
+
+    @Column(name = "site_id")
+    private int siteId;
+
+    @Lob
+    @Column(name = "data", columnDefinition = "MEDIUMBLOB")
+    private byte[] data;
+}
@@ -0,0 +1,26 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * Текст страницы отдельно от метаданных page: сжатый deflate, читается только для сниппетов
+ * и записи лемм. Запись и чтение - через PageContentStore
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "page_content", schema = "search_engine")
+public class PageText {
+    @Id
+    @Column(name = "page_id")
+    private int pageId;
+
+    @Lob
+    @Column(name = "content", columnDefinition = "MEDIUMBLOB")
+    private byte[] content;
+}
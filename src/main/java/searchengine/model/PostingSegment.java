@@ -0,0 +1,58 @@
+package searchengine.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Сегмент списка вхождений леммы для indexing-settings.postings.layout: blobs.
+ * Список разбит на сегменты до indexing-settings.postings.segment-size вхождений, сегмент хранит
+ * разности pageId и ранги в varint (см. PostingCodec). Пишется и читается через BlobPostingStorage
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@IdClass(PostingSegment.Key.class)
+@Table(name = "posting_segment", schema = "search_engine",
+        indexes = @javax.persistence.Index(columnList = "site_id"))
+public class PostingSegment {
+    @Id
+    @Column(name = "lemma_id")
+    private int lemmaId;
+
+    @Id
+    @Column(name = "segment_no")
+    private int segmentNo;
+
+    @Column(name = "site_id")
+    private int siteId;
+
+    @Column(name = "first_page_id")
+    private int firstPageId;
+
+    @Column(name = "last_page_id")
+    private int lastPageId;
+
+    @Column(name = "posting_count")
+    private int postingCount;
+
+    @Lob
+    @Column(name = "data", columnDefinition = "MEDIUMBLOB")
+    private byte[] data;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int lemmaId;
+        private int segmentNo;
+    }
+}
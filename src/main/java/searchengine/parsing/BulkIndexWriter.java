@@ -0,0 +1,257 @@
+package searchengine.parsing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.IndexingSettings;
+import searchengine.index.IndexGeneration;
+import searchengine.index.PostingStorage;
+import searchengine.lemma.LemmaOccurrences;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Буферизованная запись лемм и индексов.
+ * Леммы и индексы нескольких страниц накапливаются в памяти, в отдельном буфере на каждый сайт:
+ * буфер сайта записывается потоком этого сайта, и ошибка записи достаётся только ему. Леммы записываются многострочными
+ * INSERT ... ON DUPLICATE KEY UPDATE, id лемм получаются одним запросом WHERE lemma IN (...) на сайт,
+ * вхождения записываются в хранилище indexing-settings.postings.layout (PostingStorage).
+ * После записи поколение индекса затронутых сайтов увеличивается не чаще indexing-settings.generation-interval-ms,
+ * окончательно его увеличивает завершение индексации сайта (SiteParser.saveSite) или удаление сайта.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BulkIndexWriter {
+    private static final String UPSERT_LEMMA = "insert into search_engine.lemma(site_id, lemma, frequency) values ";
+    private static final String UPSERT_LEMMA_SUFFIX = " as new on duplicate key update frequency = frequency + new.frequency";
+    private static final String UPDATE_PAGE_LENGTH = "update search_engine.page set lemma_count = ? where page_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IndexingSettings indexingSettings;
+    private final IndexGeneration indexGeneration;
+    private final List<PostingStorage> postingStorages;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<Integer, SiteBuffer> buffers = new HashMap<>();          // siteId -> буфер сайта
+
+    /**
+     * Добавляет леммы страницы в буфер, при заполнении буфера записывает его в БД
+     * @param siteId - id сайта
+     * @param pageId - id страницы
+     * @param lemmas - лемма и её вхождения на странице
+     */
+    public void add(int siteId, int pageId, Map<String, LemmaOccurrences> lemmas) {
+        Map<String, Integer> frequencyDeltas = new HashMap<>(lemmas.size() * 4 / 3 + 1);
+        lemmas.keySet().forEach(lemma -> frequencyDeltas.put(lemma, 1));
+        addAll(siteId, Map.of(pageId, lemmas), frequencyDeltas);
+    }
+
+    /**
+     * Добавляет в буфер леммы нескольких страниц сайта, frequency лемм которых уже сложены
+     * вызывающим потоком. Блокировка буфера берётся один раз на всю пачку страниц
+     * @param siteId          - id сайта
+     * @param pages           - id страницы -> лемма и её вхождения на странице
+     * @param frequencyDeltas - лемма -> на скольких страницах пачки она встретилась
+     */
+    public void addAll(int siteId, Map<Integer, Map<String, LemmaOccurrences>> pages,
+                       Map<String, Integer> frequencyDeltas) {
+        List<PendingIndex> indices = new ArrayList<>();
+        List<Object[]> lengths = new ArrayList<>(pages.size());
+        pages.forEach((pageId, lemmas) -> {
+            int length = 0;
+            for (Map.Entry<String, LemmaOccurrences> entry : lemmas.entrySet()) {
+                LemmaOccurrences occurrences = entry.getValue();
+                length += occurrences.count();
+                indices.add(new PendingIndex(siteId, pageId, entry.getKey(), occurrences.count(),
+                        occurrences.encode()));
+            }
+            lengths.add(new Object[]{length, pageId});
+        });
+
+        SiteBuffer bufferForFlush = null;
+        synchronized (this) {
+            SiteBuffer buffer = buffers.computeIfAbsent(siteId, k -> new SiteBuffer());
+            frequencyDeltas.forEach((lemma, delta) -> buffer.lemmaDeltas().merge(lemma, delta, Integer::sum));
+            buffer.indices().addAll(indices);
+            buffer.pageLengths().addAll(lengths);
+            if (buffer.indices().size() >= indexingSettings.getBatchSize()) {
+                bufferForFlush = buffers.remove(siteId);
+            }
+        }
+        if (bufferForFlush != null) {
+            write(siteId, bufferForFlush);
+        }
+    }
+
+    /**
+     * Записывает в БД всё, что накоплено в буфере сайта
+     * @param siteId - id сайта
+     */
+    public void flush(int siteId) {
+        SiteBuffer bufferForFlush;
+        synchronized (this) {
+            bufferForFlush = buffers.remove(siteId);
+        }
+        if (bufferForFlush != null && !bufferForFlush.pageLengths().isEmpty()) {
+            write(siteId, bufferForFlush);
+        }
+    }
+
+    /**
+     * Удаляет индексы страницы и уменьшает frequency её лемм. Всё выполняется в одной транзакции:
+     * сбой не оставит frequency уменьшенной при сохранившихся индексах или страницу без текста
+     * @param siteId     - id сайта
+     * @param pageId     - id страницы
+     * @param deletePage - удалить и саму страницу вместе с её текстом
+     */
+    public void removePage(int siteId, int pageId, boolean deletePage) {
+        transactionTemplate.executeWithoutResult(status -> {
+            getPostingStorage().removePage(siteId, pageId);
+            if (deletePage) {
+                jdbcTemplate.update("delete from search_engine.page_content where page_id = ?", pageId);
+                jdbcTemplate.update("delete from search_engine.page where page_id = ?", pageId);
+            }
+        });
+        indexGeneration.bumpThrottled(siteId, indexingSettings.getGenerationIntervalMs());
+    }
+
+    /**
+     * Удаляет индексы и вклад в frequency лемм у страниц сайта, индексы которых записаны не до конца:
+     * индексы есть, а lemma_count не заполнен (запись была прервана). После этого такие страницы
+     * обрабатываются заново, как новые
+     * @param siteId - id сайта
+     * @return количество очищенных страниц
+     */
+    public int removeUnfinishedPages(int siteId) {
+        List<Integer> pageIds = getPostingStorage().findUnfinishedPages(siteId);
+        pageIds.forEach(pageId -> removePage(siteId, pageId, false));
+        return pageIds.size();
+    }
+
+    /**
+     * Удаляет леммы сайта, которые больше не встречаются ни на одной странице
+     * @param siteId - id сайта
+     * @return количество удалённых лемм
+     */
+    public int deleteUnusedLemmas(int siteId) {
+        return jdbcTemplate.update("delete from search_engine.lemma where site_id = ? and frequency <= 0", siteId);
+    }
+
+    /**
+     * Удаляет вхождения всех страниц сайта, вызывается до удаления лемм и страниц сайта
+     * @param siteId - id сайта
+     */
+    public void removeSite(int siteId) {
+        getPostingStorage().removeSite(siteId);
+        indexGeneration.bump(siteId);
+    }
+
+    /**
+     * Приводит хранилище вхождений сайта к компактному виду после индексации
+     * @param siteId - id сайта
+     */
+    public void compact(int siteId) {
+        getPostingStorage().compact(siteId);
+    }
+
+    private PostingStorage getPostingStorage() {
+        return PostingStorage.select(postingStorages, indexingSettings.getPostings().getLayout());
+    }
+
+    /**
+     * Леммы, вхождения и lemma_count страниц записываются в одной транзакции: при сбое frequency лемм
+     * не увеличивается для страниц без вхождений, которые потом будут проиндексированы заново
+     */
+    private void write(int siteId, SiteBuffer buffer) {
+        long startTime = System.currentTimeMillis();
+        Map<String, Integer> deltas = buffer.lemmaDeltas();
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, Integer> lemmaIds = Map.of();
+            if (!deltas.isEmpty()) {
+                upsertLemmas(siteId, new TreeMap<>(deltas));    // одинаковый порядок блокировок строк
+                lemmaIds = findLemmaIds(siteId, deltas.keySet());
+            }
+            insertIndices(buffer.indices(), lemmaIds);
+            jdbcTemplate.batchUpdate(UPDATE_PAGE_LENGTH, buffer.pageLengths());
+        });
+        indexGeneration.bumpThrottled(siteId, indexingSettings.getGenerationIntervalMs());
+        log.debug("siteId: {} flushed lemmas: {} indices: {} time: {} ms", siteId, deltas.size(),
+                buffer.indices().size(), System.currentTimeMillis() - startTime);
+    }
+
+    private void upsertLemmas(int siteId, Map<String, Integer> siteDeltas) {
+        List<Object[]> rows = new ArrayList<>(siteDeltas.size());
+        siteDeltas.forEach((lemma, delta) -> rows.add(new Object[]{siteId, lemma, delta}));
+        for (List<Object[]> chunk : chunks(rows)) {
+            jdbcTemplate.update(UPSERT_LEMMA + placeholders(chunk.size(), 3) + UPSERT_LEMMA_SUFFIX, flatten(chunk));
+        }
+    }
+
+    private Map<String, Integer> findLemmaIds(int siteId, Set<String> lemmas) {
+        Map<String, Integer> ids = new HashMap<>(lemmas.size() * 4 / 3 + 1);
+        List<Object> args = new ArrayList<>(lemmas.size() + 1);
+        args.add(siteId);
+        args.addAll(lemmas);
+        String sql = "select lemma_id, lemma from search_engine.lemma where site_id = ? and lemma in ("
+                + String.join(",", Collections.nCopies(lemmas.size(), "?")) + ")";
+        jdbcTemplate.query(sql, rs -> {
+            ids.put(rs.getString(2), rs.getInt(1));
+        }, args.toArray());
+        return ids;
+    }
+
+    private void insertIndices(List<PendingIndex> indices, Map<String, Integer> lemmaIds) {
+        List<PostingStorage.Posting> postings = new ArrayList<>(indices.size());
+        for (PendingIndex index : indices) {
+            Integer lemmaId = lemmaIds.get(index.lemma());
+            if (lemmaId == null) {
+                log.warn("Lemma '{}' not found for siteId: {}", index.lemma(), index.siteId());
+                continue;
+            }
+            postings.add(new PostingStorage.Posting(index.siteId(), index.pageId(), lemmaId, index.rank(),
+                    index.positions()));
+        }
+        getPostingStorage().write(postings);
+    }
+
+    private List<List<Object[]>> chunks(List<Object[]> rows) {
+        List<List<Object[]>> chunks = new ArrayList<>();
+        int batchSize = Math.max(1, indexingSettings.getBatchSize());
+        for (int i = 0; i < rows.size(); i += batchSize) {
+            chunks.add(rows.subList(i, Math.min(i + batchSize, rows.size())));
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int rows, int columns) {
+        String row = "(" + String.join(",", Collections.nCopies(columns, "?")) + ")";
+        return String.join(",", Collections.nCopies(rows, row));
+    }
+
+    private static Object[] flatten(List<Object[]> rows) {
+        return rows.stream().flatMap(Arrays::stream).toArray();
+    }
+
+    /**
+     * Буфер сайта: лемма -> +frequency, индексы, (lemma_count, pageId) страниц
+     */
+    private record SiteBuffer(Map<String, Integer> lemmaDeltas, List<PendingIndex> indices,
+                              List<Object[]> pageLengths) {
+        SiteBuffer() {
+            this(new HashMap<>(), new ArrayList<>(), new ArrayList<>());
+        }
+    }
+
+    private record PendingIndex(int siteId, int pageId, String lemma, float rank, byte[] positions) {
+    }
+}
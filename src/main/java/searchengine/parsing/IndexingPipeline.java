@@ -0,0 +1,160 @@
+package searchengine.parsing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.nodes.Document;
+import searchengine.config.IndexingSettings;
+import searchengine.lemma.LemmaOccurrences;
+import searchengine.model.Page;
+import searchengine.parsing.sitemapping.ParsePageTask;
+import searchengine.repository.PageContentStore;
+import searchengine.repository.PageRepository;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Конвейер индексации одного сайта: загрузка -> извлечение текста -> лемматизация -> запись.
+ * Загрузку выполняют задачи ParsePageTask в ForkJoinPool, остальные этапы - PipelineStage
+ * со своими пулами. Страница становится доступной для поиска сразу после записи её лемм,
+ * а не после обхода всего сайта.
+ * При инкрементальной индексации страница, текст которой не изменился, дальше этапа извлечения
+ * не идёт; у изменённой страницы сначала удаляются прежние индексы и вклад в frequency лемм.
+ * Ошибка записи лемм и индексов передаётся обработчику onWriteError, который отменяет индексацию сайта.
+ */
+@Slf4j
+public class IndexingPipeline {
+    private final PageRepository pageRepository;
+    private final PageContentStore pageContentStore;
+    private final ParseLemma parseLemma;
+    private final int siteId;
+    private final String domain;
+    private final Map<String, KnownPage> knownPages;   // путь -> страница из прошлой индексации
+    private final Consumer<Exception> onWriteError;
+
+    private final PipelineStage<FetchedPage> extractStage;
+    private final PipelineStage<Page> lemmaStage;
+    private final PipelineStage<LemmatizedPage> persistStage;
+    // ссылки загруженных страниц, которые ещё не сохранены в БД, - для контрольной точки обхода
+    private final Set<String> unsavedUrls = ConcurrentHashMap.newKeySet();
+
+    public IndexingPipeline(IndexingSettings.Pipeline settings, PageRepository pageRepository,
+                            PageContentStore pageContentStore, ParseLemma parseLemma, int siteId, String domain,
+                            Map<String, KnownPage> knownPages, Consumer<Exception> onWriteError) {
+        this.pageRepository = pageRepository;
+        this.pageContentStore = pageContentStore;
+        this.parseLemma = parseLemma;
+        this.siteId = siteId;
+        this.domain = domain;
+        this.knownPages = knownPages;
+        this.onWriteError = onWriteError;
+
+        int capacity = settings.getQueueCapacity();
+        persistStage = new PipelineStage<>("persist-" + siteId, settings.getPersistThreads(), capacity,
+                this::persist);
+        lemmaStage = new PipelineStage<>("lemma-" + siteId, settings.getLemmaThreads(), capacity,
+                this::lemmatize);
+        extractStage = new PipelineStage<>("extract-" + siteId, settings.getExtractThreads(), capacity,
+                this::extract);
+    }
+
+    /**
+     * Передаёт загруженную страницу в конвейер
+     * @param url          - ссылка на страницу
+     * @param doc          - документ
+     * @param statusCode   - код ответа
+     * @param etag         - заголовок ETag
+     * @param lastModified - заголовок Last-Modified
+     */
+    public void submit(String url, Document doc, int statusCode, String etag, String lastModified)
+            throws InterruptedException {
+        unsavedUrls.add(url);
+        extractStage.put(new FetchedPage(url, doc, statusCode, etag, lastModified));
+    }
+
+    /**
+     * Ссылки страниц, которые загружены, но ещё не сохранены в БД
+     */
+    public Set<String> getUnsavedUrls() {
+        return unsavedUrls;
+    }
+
+    /**
+     * Обход сайта закончен: дожидается обработки всех страниц и записывает остаток буфера
+     */
+    public void finish() {
+        extractStage.finish();
+        lemmaStage.finish();
+        persistStage.finish();
+        parseLemma.flush(siteId);
+    }
+
+    /**
+     * Отмена индексации: необработанные страницы отбрасываются, записанное остаётся в БД.
+     * Если буфер записать не удалось, его страницы останутся без lemma_count и будут
+     * проиндексированы заново при продолжении с контрольной точки
+     */
+    public void cancel() {
+        extractStage.cancel();
+        lemmaStage.cancel();
+        persistStage.cancel();
+        try {
+            parseLemma.flush(siteId);
+        } catch (Exception e) {
+            log.error("siteId: {} index buffer is not written on cancel", siteId, e);
+        }
+    }
+
+    private void extract(FetchedPage fetched) {
+        Page page = ParsePageTask.extractPage(fetched.doc(), siteId, domain, fetched.url(), fetched.statusCode());
+        page.setEtag(fetched.etag());
+        page.setLastModified(fetched.lastModified());
+
+        KnownPage known = knownPages.get(page.getPath());
+        if (known != null) {
+            if (known.isIndexed() && page.getContentHash().equals(known.contentHash())) {
+                // текст не изменился: леммы и индексы остаются прежними
+                pageRepository.updateValidators(known.pageId(), page.getEtag(), page.getLastModified());
+                unsavedUrls.remove(fetched.url());
+                return;
+            }
+            parseLemma.getBulkIndexWriter().removePage(siteId, known.pageId(), false);
+            page.setPageId(known.pageId());
+        }
+        pageContentStore.savePage(page);
+        unsavedUrls.remove(fetched.url());
+        if (page.getCode() != 200) {
+            return;
+        }
+        try {
+            lemmaStage.put(page);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void lemmatize(Page page) {
+        Map<String, LemmaOccurrences> lemmas = parseLemma.lemmatize(page);
+        try {
+            persistStage.put(new LemmatizedPage(page, lemmas));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void persist(LemmatizedPage lemmatized) {
+        try {
+            parseLemma.save(lemmatized.page(), lemmatized.lemmas());
+        } catch (Exception e) {
+            log.error("siteId: {} pageId: {} index write failed", siteId, lemmatized.page().getPageId(), e);
+            onWriteError.accept(e);
+        }
+    }
+
+    private record FetchedPage(String url, Document doc, int statusCode, String etag, String lastModified) {
+    }
+
+    private record LemmatizedPage(Page page, Map<String, LemmaOccurrences> lemmas) {
+    }
+}
@@ -0,0 +1,22 @@
+package searchengine.parsing;
+
+/**
+ * Страница из прошлой индексации сайта: всё, что нужно для условного запроса
+ * и проверки изменений, без содержимого страницы
+ * @param pageId       - id страницы
+ * @param path         - путь
+ * @param etag         - ETag из прошлой загрузки
+ * @param lastModified - Last-Modified из прошлой загрузки
+ * @param contentHash  - хэш текста страницы
+ * @param lemmaCount   - длина страницы в леммах, null если леммы страницы ещё не записаны
+ */
+public record KnownPage(int pageId, String path, String etag, String lastModified, Long contentHash,
+                        Integer lemmaCount) {
+
+    /**
+     * Леммы и индексы страницы записаны
+     */
+    public boolean isIndexed() {
+        return lemmaCount != null;
+    }
+}
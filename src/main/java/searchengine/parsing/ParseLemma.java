@@ -2,19 +2,13 @@ package searchengine.parsing;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import org.springframework.transaction.annotation.Transactional;
 import searchengine.lemma.LemmaFinder;
+import searchengine.lemma.LemmaOccurrences;
 import searchengine.model.*;
-import searchengine.repository.IndexRepository;
-import searchengine.repository.LemmaRepository;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import static searchengine.parsing.sitemapping.Utils.*;
@@ -24,78 +18,91 @@ import static searchengine.parsing.sitemapping.Utils.ANSI_RESET;
 @Component
 @RequiredArgsConstructor
 @Getter
-@Setter
 public class ParseLemma {
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-
-    private int beginPos;   // значение задаётся в SiteParser.getLemmasForAllPages(SiteE siteE)
-    private int endPos;     // -//-
-    private int currentPos;
+    private final BulkIndexWriter bulkIndexWriter;
+    private final LemmaFinder lemmaFinder;
 
     /**
-     * Сохраняет в БД леммы и индексы
+     * Добавляет леммы и индексы страницы в буфер записи BulkIndexWriter
      */
-    @Transactional
     public void parsing(Page page) {
+        save(page, lemmatize(page));
+    }
 
-        String content = page.getContent();
-        int siteId = page.getSiteId();
-        int pageId = page.getPageId();
-        try {
-            LemmaFinder lemmaFinder = LemmaFinder.getInstance();
-            Map<String, Integer> mapLemmas = lemmaFinder.collectLemmas(content);
-            Map<Lemma, Integer> mapLemmasForAdd = new HashMap<>();
-            mapLemmas.forEach((key, value1) -> mapLemmasForAdd.put(parseOneLemma(siteId, key), value1));
-
-            lemmaRepository.saveAll(mapLemmasForAdd.keySet());
+    /**
+     * Находит леммы страницы
+     * @param page - страница
+     * @return лемма и её вхождения в текст страницы, пустая map при ошибке
+     */
+    public Map<String, LemmaOccurrences> lemmatize(Page page) {
+        return lemmatize(page.getSiteId(), page.getPageId(), page.getContent());
+    }
 
-            List<Index> listIndexForAdd = new ArrayList<>();
-            mapLemmasForAdd.forEach((key, value1) -> listIndexForAdd.add(new Index(pageId, key.getLemmaId(), value1)));
-            indexRepository.saveAll(listIndexForAdd);
+    /**
+     * Находит леммы текста страницы
+     * @param siteId  - id сайта
+     * @param pageId  - id страницы
+     * @param content - текст страницы
+     * @return лемма и её вхождения в текст страницы, пустая map при ошибке
+     */
+    public Map<String, LemmaOccurrences> lemmatize(int siteId, int pageId, String content) {
+        try {
+            return lemmaFinder.collectLemmaOccurrences(content);
+        } catch (Exception e) {
+            log.error("Ошибка parsing lemmas: {} siteId: {} pageId: {}",
+                    content.substring(0, Math.min(50, content.length())) + "...", siteId, pageId);
+        }
+        return Map.of();
+    }
 
-            printMessageAboutProgress(siteId, pageId, mapLemmasForAdd.size(), page.getPath());
+    /**
+     * Добавляет найденные леммы страницы в буфер записи BulkIndexWriter. Страница без лемм тоже
+     * записывается: ей ставится lemma_count = 0, чтобы она считалась обработанной.
+     * Ошибка записи буфера в БД передаётся вызывающему: индексация сайта должна завершиться с ошибкой
+     * @param page   - страница
+     * @param lemmas - лемма и её вхождения
+     */
+    public void save(Page page, Map<String, LemmaOccurrences> lemmas) {
+        bulkIndexWriter.add(page.getSiteId(), page.getPageId(), lemmas);
+        log.debug("Writing lemmas and indices: {} pageId: {} url: {}", lemmas.size(), page.getPageId(), page.getPath());
+    }
 
-        } catch (Exception e) {
-            log.error("Ошибка parsing lemmas: {} siteId: {} pageId: {}", content.substring(0, 50) + "...", siteId, pageId);
+    /**
+     * Добавляет леммы нескольких страниц сайта в буфер записи BulkIndexWriter
+     * @param siteId          - id сайта
+     * @param pages           - id страницы -> лемма и её вхождения
+     * @param frequencyDeltas - лемма -> количество страниц, на которых она встретилась
+     */
+    public void saveAll(int siteId, Map<Integer, Map<String, LemmaOccurrences>> pages,
+                        Map<String, Integer> frequencyDeltas) {
+        if (pages.isEmpty()) {
+            return;
         }
+        bulkIndexWriter.addAll(siteId, pages, frequencyDeltas);
     }
 
     /**
      * Вывод в консоль процесса парсинга
-     * @param siteId        - id сайта
-     * @param pageId        - id страницы
-     * @param countOfLemmas - кол-во лемм
-     * @param url           - ссылка на страницу
+     * @param siteId - id сайта
+     * @param done   - обработано страниц
+     * @param total  - всего страниц
      */
-    private void printMessageAboutProgress(int siteId, int pageId, int countOfLemmas, String url) {
-        if ((endPos - beginPos) == 0) {
-            log.info("Writing lemmas and indices: {} ", countOfLemmas);
+    public void printMessageAboutProgress(int siteId, int done, int total) {
+        if (total == 0) {
             return;
         }
         StringBuilder builder = new StringBuilder();
-        builder.append("Writing lemmas and indices: ").append(ANSI_GREEN).append((currentPos - beginPos) * 100 / (endPos - beginPos)).append("% ");
+        builder.append("Writing lemmas and indices: ").append(ANSI_GREEN).append(done * 100L / total).append("% ");
         builder.append(ANSI_RESET).append(" siteId:").append(ANSI_CYAN).append(siteId).append(ANSI_RESET);
-        builder.append(" pageId: ").append(ANSI_CYAN).append(pageId).append(ANSI_RESET);
-        builder.append(" number of lemmas: ").append(ANSI_CYAN).append(countOfLemmas).append(ANSI_RESET);
-        builder.append(" url: ").append(ANSI_BLUE).append(url).append(ANSI_RESET);
+        builder.append(" pages: ").append(ANSI_CYAN).append(done).append("/").append(total).append(ANSI_RESET);
         System.out.print(builder + "\r");
     }
 
     /**
-     * Возвращает лемму
-     * если нет в БД то создаёт новую
+     * Записывает в БД леммы и индексы сайта, накопленные в буфере. Ошибка записи передаётся вызывающему
      * @param siteId - id сайта
-     * @param key    - лемма
-     * @return lemma
      */
-    private Lemma parseOneLemma(int siteId, String key) {
-        Lemma result = lemmaRepository.findBySiteIdAndLemma(siteId, key).orElse(null);
-        if (result == null) {
-            result = new Lemma(siteId, key, 1);
-        } else {
-            result.setFrequency(result.getFrequency() + 1);
-        }
-        return result;
+    public void flush(int siteId) {
+        bulkIndexWriter.flush(siteId);
     }
 }
@@ -0,0 +1,90 @@
+package searchengine.parsing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Этап конвейера: ограниченная очередь и свой пул обработчиков.
+ * Если очередь заполнена, put() блокирует предыдущий этап.
+ */
+@Slf4j
+public class PipelineStage<T> {
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final ExecutorService workers;
+    private final Consumer<T> handler;
+    private volatile boolean finished;
+
+    public PipelineStage(String name, int threads, int capacity, Consumer<T> handler) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.handler = handler;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactoryBuilder()
+                .setNameFormat(name + "-%d")
+                .build());
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Передаёт элемент на обработку, ждёт, пока в очереди освободится место
+     */
+    public void put(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    /**
+     * Больше элементов не будет: дожидается обработки очереди и завершения обработчиков
+     */
+    public void finish() {
+        finished = true;
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                log.debug("Stage {}: waiting, queue size: {}", name, queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Отмена: очередь очищается, обработчики прерываются
+     */
+    public void cancel() {
+        finished = true;
+        queue.clear();
+        workers.shutdownNow();
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                T item = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    if (finished) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    handler.accept(item);
+                } catch (Exception e) {
+                    log.error("Stage {}: {}", name, e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package searchengine.parsing.sitemapping;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+import searchengine.model.CrawlCheckpoint;
+import searchengine.repository.CrawlCheckpointRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Контрольные точки индексации сайтов в таблице crawl_checkpoint.
+ * Во время обхода точка сохраняется каждые indexing-settings.checkpoint.interval-sec секунд и при остановке,
+ * после успешной индексации сайта удаляется.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CheckpointService {
+    private final CrawlCheckpointRepository checkpointRepository;
+    private final IndexingSettings indexingSettings;
+
+    public boolean isEnabled() {
+        return indexingSettings.getCheckpoint().isEnabled();
+    }
+
+    /**
+     * Контрольная точка сайта
+     * @param siteId - id сайта
+     * @return контрольная точка или null, если её нет или они выключены
+     */
+    public CrawlCheckpoint load(int siteId) {
+        return isEnabled() ? checkpointRepository.findById(siteId).orElse(null) : null;
+    }
+
+    /**
+     * Сохраняет границу обхода сайта
+     * @param session - сессия обхода сайта
+     */
+    public void saveCrawl(CrawlSession session) {
+        if (!isEnabled()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        CrawlFrontier frontier = session.getFrontier();
+        CrawlFrontier.Snapshot snapshot = frontier.snapshot();
+        List<String> pending = new ArrayList<>(snapshot.pending());
+        if (session.getPipeline() != null) {
+            pending.addAll(session.getPipeline().getUnsavedUrls());     // загружены, но ещё не сохранены
+        }
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint();
+        checkpoint.setSiteId(session.getSiteId());
+        checkpoint.setPhase(CrawlCheckpoint.Phase.CRAWL);
+        checkpoint.setVisited(snapshot.visited());
+        checkpoint.setPending(encodeUrls(pending));
+        checkpoint.setPendingCount(pending.size());
+        checkpoint.setUpdatedAt(Utils.setNow());
+        checkpointRepository.save(checkpoint);
+        log.info("Checkpoint siteId: {} found: {} pending: {} time: {} ms", session.getSiteId(), frontier.size(),
+                pending.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Обход сайта закончен, дальше идёт запись лемм: граница обхода больше не нужна
+     * @param siteId - id сайта
+     */
+    public void saveLemmaPhase(int siteId) {
+        if (!isEnabled()) {
+            return;
+        }
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint();
+        checkpoint.setSiteId(siteId);
+        checkpoint.setPhase(CrawlCheckpoint.Phase.LEMMAS);
+        checkpoint.setUpdatedAt(Utils.setNow());
+        checkpointRepository.save(checkpoint);
+    }
+
+    /**
+     * Индексация сайта закончена или начинается заново
+     * @param siteId - id сайта
+     */
+    public void delete(int siteId) {
+        if (checkpointRepository.existsById(siteId)) {
+            checkpointRepository.deleteById(siteId);
+        }
+    }
+
+    public static List<String> decodeUrls(byte[] data) {
+        if (data == null || data.length == 0) {
+            return List.of();
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return text.isEmpty() ? List.of() : List.of(text.split("\n"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encodeUrls(List<String> urls) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(String.join("\n", urls).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
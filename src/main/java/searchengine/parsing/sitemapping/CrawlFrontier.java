@@ -0,0 +1,309 @@
+package searchengine.parsing.sitemapping;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hashing;
+import searchengine.config.IndexingSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Граница обхода сайта: множество уже найденных ссылок и очередь ссылок, ожидающих загрузки.
+ * Найденные ссылки хранятся не строками, а 64-битными отпечатками (murmur3) в LongHashSet -
+ * около 16 байт на ссылку. Для очень больших сайтов вместо множества можно включить фильтр Блума
+ * (indexing-settings.frontier.bloom-filter): памяти ещё меньше, но с вероятностью false-positive-rate
+ * новая ссылка будет принята за найденную и пропущена.
+ * Отпечаток считается по ключу ссылки (UrlCanonicalizer.fingerprintKey), в очереди стоит сама ссылка.
+ * Строка ссылки живёт только пока ссылка стоит в очереди.
+ * Потоки обхода, которым нечего загружать, и поток, ожидающий конца обхода, не опрашивают границу
+ * в цикле, а ждут сигнала: новая ссылка в очереди, конец обхода или stop() при отмене.
+ */
+public class CrawlFrontier {
+    private static final byte FORMAT_SET = 0;
+    private static final byte FORMAT_BLOOM = 1;
+
+    private final LongHashSet visited;
+    private BloomFilter<Long> visitedFilter;
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger unfinished = new AtomicInteger();   // в очереди + в обработке
+    private final AtomicInteger discovered = new AtomicInteger();
+    // операции с границей берут блокировку на чтение и идут параллельно, снимок для контрольной точки
+    // берёт блокировку на запись, чтобы найденные ссылки и очередь в нём были согласованы
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final UnaryOperator<String> keyOf;
+    private final Object signal = new Object();
+    private final AtomicInteger waiting = new AtomicInteger();      // потоков ждут signal
+    private volatile boolean stopped;
+
+    /**
+     * @param settings - настройки границы обхода
+     * @param keyOf    - ключ ссылки, по которому считается отпечаток
+     */
+    public CrawlFrontier(IndexingSettings.Frontier settings, UnaryOperator<String> keyOf) {
+        this.keyOf = keyOf;
+        if (settings.isBloomFilter()) {
+            visited = null;
+            visitedFilter = BloomFilter.create(Funnels.longFunnel(), settings.getExpectedUrls(),
+                    settings.getFalsePositiveRate());
+        } else {
+            visited = new LongHashSet(settings.getExpectedUrls());
+            visitedFilter = null;
+        }
+    }
+
+    /**
+     * Отмечает ссылку найденной, новую ссылку ставит в очередь загрузки
+     * @param url - ссылка
+     * @return true если ссылка новая
+     */
+    public boolean offer(String url) {
+        snapshotLock.readLock().lock();
+        try {
+            if (!markVisited(url)) {
+                return false;
+            }
+            unfinished.incrementAndGet();
+            pending.add(url);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        wakeUp();
+        return true;
+    }
+
+    /**
+     * Ставит ссылку в очередь загрузки, даже если она уже отмечена найденной: для страниц,
+     * восстановленных из контрольной точки, которые загружены, но не проиндексированы
+     * @param url - ссылка
+     */
+    public void requeue(String url) {
+        snapshotLock.readLock().lock();
+        try {
+            markVisited(url);
+            unfinished.incrementAndGet();
+            pending.add(url);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        wakeUp();
+    }
+
+    /**
+     * Отмечает ссылку найденной, не ставя её в очередь
+     * @param url - ссылка
+     * @return true если ссылка новая
+     */
+    public boolean markVisited(String url) {
+        long fingerprint = Hashing.murmur3_128().hashString(keyOf.apply(url), StandardCharsets.UTF_8).asLong();
+        boolean added = visited != null ? visited.add(fingerprint) : visitedFilter.put(fingerprint);
+        if (added) {
+            discovered.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * Следующая ссылка для загрузки; после обработки вызывается done()
+     * @return ссылка или null, если очередь сейчас пуста
+     */
+    public String poll() {
+        snapshotLock.readLock().lock();
+        try {
+            String url = pending.poll();
+            if (url != null) {
+                inProgress.add(url);
+            }
+            return url;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Следующая ссылка для загрузки, ждёт её появления не дольше timeout
+     * @return ссылка или null, если за timeout ссылка не появилась, обход закончен или вызван stop()
+     */
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        String url = poll();
+        if (url != null || isFinished()) {
+            return url;
+        }
+        await(() -> stopped || !pending.isEmpty() || isFinished(), unit.toNanos(timeout));
+        return poll();
+    }
+
+    /**
+     * Ждёт конца обхода не дольше timeout
+     * @return true если обход закончен
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!isFinished()) {
+            await(() -> stopped || isFinished(), unit.toNanos(timeout));
+        }
+        return isFinished();
+    }
+
+    /**
+     * Отмена обхода: ждущие в poll(timeout) и awaitFinished() потоки просыпаются, новые ожидания не блокируются
+     */
+    public void stop() {
+        stopped = true;
+        wakeUp();
+    }
+
+    /**
+     * Будит потоки, ждущие в poll(timeout) и awaitFinished(): новая ссылка, конец обхода или отмена
+     */
+    private void wakeUp() {
+        if (waiting.get() > 0) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Одно ожидание сигнала; вызывающий перепроверяет условие сам (возможны ложные пробуждения)
+     */
+    private void await(BooleanSupplier condition, long nanos) throws InterruptedException {
+        synchronized (signal) {
+            waiting.incrementAndGet();
+            try {
+                // условие проверяется после увеличения waiting: сигнал, отправленный после проверки, не теряется
+                if (!condition.getAsBoolean() && nanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(signal, nanos);
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Ссылка, полученная из poll(), обработана
+     * @param url - ссылка
+     */
+    public void done(String url) {
+        int left;
+        snapshotLock.readLock().lock();
+        try {
+            inProgress.remove(url);
+            left = unfinished.decrementAndGet();
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        if (left == 0) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Обход закончен: очередь пуста и ни одна ссылка не обрабатывается
+     */
+    public boolean isFinished() {
+        return unfinished.get() == 0;
+    }
+
+    /**
+     * Количество найденных ссылок
+     */
+    public int size() {
+        return discovered.get();
+    }
+
+    /**
+     * Согласованный снимок границы для контрольной точки: на время снимка обход приостанавливается
+     * @return отпечатки найденных ссылок и необработанные ссылки (очередь и ссылки в обработке)
+     */
+    public Snapshot snapshot() {
+        snapshotLock.writeLock().lock();
+        try {
+            List<String> urls = new ArrayList<>(inProgress);
+            urls.addAll(pending);
+            return new Snapshot(writeVisited(), urls);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    private byte[] writeVisited() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (visited != null) {
+                out.writeByte(FORMAT_SET);
+                long[] values = visited.toArray();
+                out.writeInt(values.length);
+                for (long value : values) {
+                    out.writeLong(value);
+                }
+            } else {
+                out.writeByte(FORMAT_BLOOM);
+                visitedFilter.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Восстанавливает границу обхода из контрольной точки, вызывается до начала обхода.
+     * Фильтр Блума из контрольной точки нельзя перенести в множество отпечатков: в этом случае
+     * восстанавливается только очередь
+     * @param visitedData - Snapshot.visited() из контрольной точки
+     * @param urls        - необработанные ссылки
+     */
+    public void restore(byte[] visitedData, List<String> urls) {
+        if (visitedData != null && visitedData.length > 0) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(visitedData))) {
+                byte format = in.readByte();
+                if (format == FORMAT_SET) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        long fingerprint = in.readLong();
+                        if (visited != null ? visited.add(fingerprint) : visitedFilter.put(fingerprint)) {
+                            discovered.incrementAndGet();
+                        }
+                    }
+                } else if (format == FORMAT_BLOOM && visitedFilter != null) {
+                    visitedFilter = BloomFilter.readFrom(in, Funnels.longFunnel());
+                    discovered.addAndGet((int) visitedFilter.approximateElementCount());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        for (String url : urls) {
+            markVisited(url);
+            unfinished.incrementAndGet();
+            pending.add(url);
+        }
+    }
+
+    /**
+     * Снимок границы обхода
+     * @param visited - отпечатки найденных ссылок
+     * @param pending - необработанные ссылки
+     */
+    public record Snapshot(byte[] visited, List<String> pending) {
+    }
+}
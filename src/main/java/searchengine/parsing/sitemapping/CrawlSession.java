@@ -0,0 +1,139 @@
+package searchengine.parsing.sitemapping;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.config.Messages;
+import searchengine.parsing.IndexingPipeline;
+import searchengine.parsing.KnownPage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Состояние обхода одного сайта: граница обхода (найденные ссылки и очередь), пул, конвейер и признак отмены.
+ * Для каждого индексируемого сайта создаётся своя сессия, поэтому сайты можно обходить параллельно.
+ */
+@Getter
+public class CrawlSession {
+    private final int siteId;
+    private final String domain;
+    private final String url;
+    private final Semaphore fetchPermits;     // общий для всех сессий лимит одновременных загрузок
+
+    private final CrawlFrontier frontier;
+    private final UrlCanonicalizer canonicalizer;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicInteger countErrorPages = new AtomicInteger();
+
+    private final Map<String, KnownPage> knownPages = new ConcurrentHashMap<>();  // путь -> страница
+    private final Set<Integer> seenPageIds = ConcurrentHashMap.newKeySet();     // id встреченных known-страниц
+
+    @Setter
+    private ForkJoinPool pool;
+    @Setter
+    private IndexingPipeline pipeline;
+    @Setter
+    private volatile RobotsRules robotsRules = RobotsRules.ALLOW_ALL;
+    @Setter
+    private boolean resumed;        // индексация продолжается с контрольной точки
+    private volatile String error;  // первая ошибка записи индекса, после неё обход отменяется
+
+    public CrawlSession(int siteId, String domain, String url, Semaphore fetchPermits, CrawlFrontier frontier,
+                        UrlCanonicalizer canonicalizer) {
+        this.siteId = siteId;
+        this.domain = domain;
+        this.url = url;
+        this.fetchPermits = fetchPermits;
+        this.frontier = frontier;
+        this.canonicalizer = canonicalizer;
+    }
+
+    /**
+     * Приводит ссылку к каноническому виду, новую ссылку, разрешённую robots.txt, ставит в очередь обхода
+     * @param link - абсолютная ссылка
+     * @return true если ссылка прошла отбор и новая
+     */
+    public boolean addLink(String link) {
+        String canonical = canonicalizer.canonicalize(link);
+        return canonical != null
+                && robotsRules.isAllowed(canonical.substring(domain.length()))
+                && frontier.offer(canonical);
+    }
+
+    /**
+     * Страницы из прошлой индексации для инкрементального обхода
+     * @param pages - страницы сайта в БД
+     */
+    public void setKnownPages(List<KnownPage> pages) {
+        pages.forEach(page -> knownPages.put(page.path(), page));
+    }
+
+    public boolean isIncremental() {
+        return !knownPages.isEmpty();
+    }
+
+    public KnownPage getKnownPage(String path) {
+        return knownPages.get(path);
+    }
+
+    /**
+     * Отмечает, что страница по-прежнему есть на сайте. Запоминаются только страницы из прошлой индексации
+     * (по id), поэтому память не растёт с числом новых страниц, а без инкрементальной индексации не расходуется
+     * @param path - путь страницы
+     */
+    public void markSeen(String path) {
+        if (knownPages.isEmpty()) {
+            return;
+        }
+        KnownPage page = knownPages.get(path);
+        if (page != null) {
+            seenPageIds.add(page.pageId());
+        }
+    }
+
+    /**
+     * Страницы из прошлой индексации, которых больше нет на сайте
+     */
+    public List<KnownPage> getMissingPages() {
+        return knownPages.values().stream()
+                .filter(page -> !seenPageIds.contains(page.pageId()))
+                .toList();
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Ошибка записи индекса: запоминается первая ошибка, обход отменяется, сайт получит статус FAILED
+     * @param e - исключение
+     */
+    public void fail(Exception e) {
+        synchronized (this) {
+            if (error == null) {
+                error = Messages.INDEX_WRITE_FAILED + e.getMessage();
+            }
+        }
+        cancel();
+    }
+
+    /**
+     * Отмена обхода сайта: останавливаются пул загрузки и конвейер
+     */
+    public void cancel() {
+        cancelled.set(true);
+        frontier.stop();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (pipeline != null) {
+            pipeline.cancel();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.parsing.sitemapping;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Ответ сервера на запрос страницы
+ * @param url         - ссылка на страницу
+ * @param statusCode  - код ответа, 0 - сетевая ошибка
+ * @param contentType - заголовок Content-Type
+ * @param body        - тело ответа
+ * @param etag        - заголовок ETag
+ * @param lastModified - заголовок Last-Modified
+ */
+public record FetchResult(String url, int statusCode, String contentType, byte[] body,
+                          String etag, String lastModified) {
+
+    public static FetchResult failed(String url) {
+        return new FetchResult(url, 0, "", new byte[0], null, null);
+    }
+
+    /**
+     * Ответ 304 на условный запрос: страница не изменилась
+     */
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    /**
+     * Страница удалена с сайта
+     */
+    public boolean isGone() {
+        return statusCode == 404 || statusCode == 410;
+    }
+
+    public boolean isOk() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    public boolean isHtml() {
+        return contentType == null || contentType.isEmpty() || contentType.contains("html");
+    }
+
+    /**
+     * Разбор тела ответа, кодировка берётся из Content-Type или из meta страницы
+     * @return Document или null, если ответ не является html-страницей
+     */
+    public Document parse() {
+        if (!isOk() || !isHtml()) {
+            return null;
+        }
+        try {
+            return Jsoup.parse(new ByteArrayInputStream(body), charset(), url);
+        } catch (IOException | IllegalArgumentException e) {    // в т.ч. неизвестная кодировка
+            return null;
+        }
+    }
+
+    private String charset() {
+        if (contentType == null) {
+            return null;
+        }
+        int pos = contentType.toLowerCase().indexOf("charset=");
+        if (pos < 0) {
+            return null;
+        }
+        return contentType.substring(pos + "charset=".length()).replace("\"", "").split(";")[0].trim();
+    }
+}
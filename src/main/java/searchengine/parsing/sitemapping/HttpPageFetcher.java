@@ -0,0 +1,202 @@
+package searchengine.parsing.sitemapping;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Загрузка страниц через java.net.http.HttpClient: keep-alive соединения переиспользуются,
+ * HTTP/2 - если сервер его поддерживает. Для каждого хоста ограничено число одновременных
+ * запросов и выдерживается пауза между запросами.
+ * Ожидание ответа в потоке ForkJoinPool оформлено через ManagedBlocker, чтобы пул
+ * не простаивал, пока его потоки ждут сеть.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HttpPageFetcher implements PageFetcher {
+    private final IndexingSettings indexingSettings;
+    private final Map<String, HostLimiter> hosts = new ConcurrentHashMap<>();
+    private HttpClient httpClient;
+
+    @PostConstruct
+    private void init() {
+        IndexingSettings.Fetcher settings = indexingSettings.getFetcher();
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(settings.getConnectTimeoutMs()))
+                .executor(Executors.newFixedThreadPool(Math.max(1, settings.getHttpThreads()),
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("http-%d")
+                                .setDaemon(true)
+                                .build()))
+                .build();
+    }
+
+    @Override
+    public FetchResult fetch(String url, String etag, String lastModified) {
+        return fetch(url, etag, lastModified, false);
+    }
+
+    @Override
+    public FetchResult fetchFile(String url) {
+        return fetch(url, null, null, true);
+    }
+
+    private FetchResult fetch(String url, String etag, String lastModified, boolean anyContentType) {
+        IndexingSettings.Fetcher settings = indexingSettings.getFetcher();
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(settings.getRequestTimeoutMs()))
+                    .header("User-Agent", settings.getUserAgent())
+                    .header("Referer", settings.getReferrer())
+                    .GET();
+            if (etag != null && !etag.isEmpty()) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null && !lastModified.isEmpty()) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid url: {}", url);
+            return FetchResult.failed(url);
+        }
+
+        HostLimiter host = getHost(request.uri().getHost());
+        try {
+            return managedCall(() -> host.call(() -> send(request, anyContentType)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("Fetch error: {} {}", url, e.getMessage());
+        }
+        return FetchResult.failed(url);
+    }
+
+    @Override
+    public void setCrawlDelay(String host, long delayMs) {
+        getHost(host).delayMs = Math.max(delayMs, indexingSettings.getFetcher().getCrawlDelayMs());
+    }
+
+    private HostLimiter getHost(String host) {
+        IndexingSettings.Fetcher settings = indexingSettings.getFetcher();
+        return hosts.computeIfAbsent(host == null ? "" : host,
+                h -> new HostLimiter(settings.getPerHostConnections(), settings.getCrawlDelayMs()));
+    }
+
+    private FetchResult send(HttpRequest request, boolean anyContentType) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, info ->
+                anyContentType || isAllowedContentType(info.headers().firstValue("Content-Type").orElse(""))
+                        ? HttpResponse.BodySubscribers.ofByteArray()
+                        : HttpResponse.BodySubscribers.replacing(new byte[0]));
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        return new FetchResult(response.uri().toString(), response.statusCode(), contentType, response.body(),
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null));
+    }
+
+    /**
+     * Тело ответа загружается, только если Content-Type из indexing-settings.fetcher.content-types
+     * @param contentType - заголовок Content-Type, пустой если его нет
+     */
+    private boolean isAllowedContentType(String contentType) {
+        if (contentType.isEmpty()) {
+            return true;
+        }
+        String type = contentType.toLowerCase();
+        return indexingSettings.getFetcher().getContentTypes().stream().anyMatch(type::startsWith);
+    }
+
+    private static <T> T managedCall(Callable<T> call) throws Exception {
+        BlockingCall<T> blocker = new BlockingCall<>(call);
+        ForkJoinPool.managedBlock(blocker);
+        if (blocker.error != null) {
+            throw blocker.error;
+        }
+        return blocker.result;
+    }
+
+    /**
+     * Ограничения запросов к одному хосту: число одновременных запросов и пауза между ними
+     */
+    private static class HostLimiter {
+        private final Semaphore permits;
+        private final AtomicLong nextSlot = new AtomicLong();
+        private volatile long delayMs;
+
+        HostLimiter(int connections, long delayMs) {
+            this.permits = new Semaphore(Math.max(1, connections));
+            this.delayMs = delayMs;
+        }
+
+        <T> T call(Callable<T> call) throws Exception {
+            permits.acquire();
+            try {
+                waitForSlot();
+                return call.call();
+            } finally {
+                permits.release();
+            }
+        }
+
+        private void waitForSlot() throws InterruptedException {
+            long delay = delayMs;
+            if (delay <= 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long slot = nextSlot.getAndAccumulate(now, (next, time) -> Math.max(next, time) + delay);
+            long wait = Math.max(slot, now) - now;
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+        }
+    }
+
+    private static class BlockingCall<T> implements ForkJoinPool.ManagedBlocker {
+        private final Callable<T> call;
+        private T result;
+        private Exception error;
+        private boolean done;
+
+        BlockingCall(Callable<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public boolean block() {
+            try {
+                result = call.call();
+            } catch (Exception e) {
+                error = e;
+            }
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package searchengine.parsing.sitemapping;
+
+import java.util.Arrays;
+
+/**
+ * Множество 64-битных значений без упаковки в Long: открытая адресация (линейное пробирование)
+ * в массивах long, таблица разбита на сегменты, каждый сегмент блокируется и растёт отдельно.
+ * Значение 0 в таблице означает пустую ячейку, поэтому сам 0 хранится отдельным флагом сегмента.
+ */
+final class LongHashSet {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param expectedSize - ожидаемое количество значений, таблицы растут и сверх него
+     */
+    LongHashSet(int expectedSize) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(16, expectedSize / SEGMENTS));
+        }
+    }
+
+    /**
+     * @return true если значения ещё не было в множестве
+     */
+    boolean add(long value) {
+        long hash = mix(value);
+        return segments[(int) (hash >>> 60)].add(value, (int) hash);
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Все значения множества; во время вызова множество может меняться
+     */
+    long[] toArray() {
+        long[] values = new long[(int) size()];
+        int count = 0;
+        for (Segment segment : segments) {
+            count = segment.copyTo(values, count);
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static final class Segment {
+        private long[] table;
+        private boolean hasZero;
+        private int size;
+
+        Segment(int expectedSize) {
+            table = new long[Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1];
+        }
+
+        synchronized boolean add(long value, int hash) {
+            if (value == 0) {
+                if (hasZero) {
+                    return false;
+                }
+                hasZero = true;
+                size++;
+                return true;
+            }
+            if (!insert(table, value, hash)) {
+                return false;
+            }
+            size++;
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return true;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int copyTo(long[] values, int count) {
+            if (hasZero && count < values.length) {
+                values[count++] = 0;
+            }
+            for (long value : table) {
+                if (value != 0 && count < values.length) {
+                    values[count++] = value;
+                }
+            }
+            return count;
+        }
+
+        private void rehash() {
+            long[] grown = new long[table.length * 2];
+            for (long value : table) {
+                if (value != 0) {
+                    insert(grown, value, (int) mix(value));
+                }
+            }
+            table = grown;
+        }
+
+        private static boolean insert(long[] table, long value, int hash) {
+            int mask = table.length - 1;
+            int i = hash & mask;
+            while (table[i] != 0) {
+                if (table[i] == value) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = value;
+            return true;
+        }
+    }
+}
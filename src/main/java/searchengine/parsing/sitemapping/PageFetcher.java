@@ -0,0 +1,39 @@
+package searchengine.parsing.sitemapping;
+
+/**
+ * Загрузка страниц для обхода сайта
+ */
+public interface PageFetcher {
+    /**
+     * Загружает страницу
+     * @param url - ссылка на страницу
+     * @return результат загрузки, при сетевой ошибке - FetchResult.failed(url)
+     */
+    default FetchResult fetch(String url) {
+        return fetch(url, null, null);
+    }
+
+    /**
+     * Условная загрузка страницы: если страница не изменилась, сервер отвечает 304 без тела
+     * @param url          - ссылка на страницу
+     * @param etag         - ETag из прошлой загрузки (If-None-Match), может быть null
+     * @param lastModified - Last-Modified из прошлой загрузки (If-Modified-Since), может быть null
+     * @return результат загрузки
+     */
+    FetchResult fetch(String url, String etag, String lastModified);
+
+    /**
+     * Загружает служебный файл сайта (robots.txt, sitemap.xml) без проверки Content-Type
+     * @param url - ссылка на файл
+     * @return результат загрузки
+     */
+    FetchResult fetchFile(String url);
+
+    /**
+     * Устанавливает паузу между запросами к хосту, например из Crawl-delay в robots.txt
+     * @param host    - хост
+     * @param delayMs - пауза в миллисекундах
+     */
+    default void setCrawlDelay(String host, long delayMs) {
+    }
+}
@@ -1,25 +1,20 @@
 package searchengine.parsing.sitemapping;
 
+import com.google.common.hash.Hashing;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.HttpStatusException;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import searchengine.model.Page;;
+import searchengine.model.Page;
+import searchengine.parsing.IndexingPipeline;
+import searchengine.parsing.KnownPage;
 import searchengine.parsing.ParseLemma;
-import searchengine.repository.PageRepository;
+import searchengine.repository.PageContentStore;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.RecursiveTask;
+import java.nio.charset.StandardCharsets;
 
 import static searchengine.parsing.sitemapping.Utils.*;
 
@@ -27,78 +22,112 @@ import static searchengine.parsing.sitemapping.Utils.*;
 @Getter
 @Setter
 @NoArgsConstructor
-public class ParsePageTask extends RecursiveTask<Set<String>> {
+public class ParsePageTask implements Runnable {
     private ParseLemma parseLemma;
-    private PageRepository pageRepository;
+    private PageContentStore pageContentStore;
+    private PageFetcher fetcher;
 
-    public ParsePageTask(ParseLemma parseLemma, PageRepository pageRepository) {
+    public ParsePageTask(ParseLemma parseLemma, PageContentStore pageContentStore, PageFetcher fetcher) {
         this.parseLemma = parseLemma;
-        this.pageRepository = pageRepository;
+        this.pageContentStore = pageContentStore;
+        this.fetcher = fetcher;
     }
 
     private int siteId;             // Id сайта
     private String url;             // ссылка
     private String domain;          // домен
-    private ParsePageTask parent;   // родитель
-
-    private static ConcurrentHashMap<String, ParsePageTask> uniqueLinks = new ConcurrentHashMap<>();
+    private CrawlSession session;   // сессия обхода сайта
 
     /**
-     * Возвращает список уникальных ссылок для сайта
+     * Загружает страницу, передаёт её на сохранение и ставит найденные на ней ссылки в очередь обхода.
+     * Задача ничего не возвращает и не ссылается на задачу-родителя: после выполнения от неё
+     * ничего не остаётся, найденные ссылки хранит CrawlFrontier сессии
      */
     @Override
-    protected Set<String> compute() {
-        Integer statusCode = 200;
-        Integer countErrorPages = 0;
-
-        Set<String> listOfUrls = new HashSet<>();
-        List<ParsePageTask> tasks = new ArrayList<>();
+    public void run() {
+        if (session.isCancelled()) {
+            return;
+        }
 
-        Document doc = getDocumentByUrl(url, statusCode);
+        KnownPage known = session.getKnownPage(getPagePath(url, domain));
+        // условный запрос - только для страниц, леммы которых уже записаны
+        FetchResult result = known == null || !known.isIndexed() ? fetchPage(url, null, null)
+                : fetchPage(url, known.etag(), known.lastModified());
+        int statusCode = result.statusCode();
+        String pageUrl = resolveUrl(result);
+        if (!UrlCanonicalizer.fingerprintKey(pageUrl).equals(UrlCanonicalizer.fingerprintKey(url))
+                && !session.getFrontier().markVisited(pageUrl)) {
+            return;     // перенаправление на страницу, которая обходится по своей ссылке
+        }
+        if (!result.isGone()) {
+            session.markSeen(getPagePath(pageUrl, domain));     // при сетевой ошибке страницу не удаляем
+        }
+        Document doc = result.parse();
         if (doc == null) {
-            return listOfUrls;
+            if (statusCode >= 400) {
+                session.getCountErrorPages().incrementAndGet();
+                log.debug("url: {} {}", url, statusCode);
+            }
+            return;
         }
-        if (uniqueLinks.containsKey(url)) {
-            savePage(doc, statusCode);
-            printMessageAboutPages(statusCode, countErrorPages);
+        IndexingPipeline pipeline = session.getPipeline();
+        if (pipeline == null) {
+            if (known == null) {        // страница уже сохранена до контрольной точки
+                savePage(doc, statusCode, pageUrl);
+            }
+        } else {
+            try {
+                pipeline.submit(pageUrl, doc, statusCode, result.etag(), result.lastModified());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
+        printMessageAboutPages(statusCode);
 
-        Elements elements = doc.select("a[href~=^/?([\\w\\d/-]+)?]");
+        Elements elements = doc.select("a[href]");
         for (Element link : elements) {
-            String checkingUrl = link.attr("abs:href").replace("//www.", "//");
-            if (isValidUrl(checkingUrl)) {
-                listOfUrls.add(checkingUrl);
-
-                ParsePageTask newParsePageTask = prepareNewPage(checkingUrl);
-
-                newParsePageTask.fork();
-                tasks.add(newParsePageTask);
-            }
+            session.addLink(link.attr("abs:href"));     // отбор и канонизация - UrlCanonicalizer
         }
+    }
 
-        tasks.forEach((task) -> listOfUrls.addAll(task.join()));
-        return listOfUrls;
+    /**
+     * Ссылка, по которой сохраняется страница: после перенаправления - конечная ссылка в каноническом виде,
+     * если она на этом же сайте, иначе ссылка запроса
+     * @param result - ответ сервера
+     * @return ссылка страницы
+     */
+    private String resolveUrl(FetchResult result) {
+        if (result.url() == null || result.url().equals(url)) {
+            return url;
+        }
+        String resolved = session.getCanonicalizer().canonicalize(result.url());
+        return resolved == null ? url : resolved;
     }
 
     /**
-     * Получить Document по ссылке
-     * @param url ссылка на страницу
-     * @param statusCode код ошибки
-     * @return Document
+     * Загрузить страницу по ссылке
+     * @param url          ссылка на страницу
+     * @param etag         ETag из прошлой загрузки или null
+     * @param lastModified Last-Modified из прошлой загрузки или null
+     * @return ответ сервера
      */
-    public Document getDocumentByUrl(String url, Integer statusCode) {
-        Document doc = null;
+    public FetchResult fetchPage(String url, String etag, String lastModified) {
+        if (session != null) {
+            try {
+                session.getFetchPermits().acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return FetchResult.failed(url);
+            }
+        }
         try {
-            doc = Jsoup.connect(url)
-                    .userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6")
-                    .referrer("http://www.google.com")
-                    .get();
-        } catch (HttpStatusException e) {
-            statusCode = e.getStatusCode();
-        } catch (IOException ex) {
-            return null;
+            return fetcher.fetch(url, etag, lastModified);
+        } finally {
+            if (session != null) {
+                session.getFetchPermits().release();
+            }
         }
-        return doc;
     }
 
     /**
@@ -107,10 +136,31 @@ public class ParsePageTask extends RecursiveTask<Set<String>> {
      * @param statusCode - код состояния
      */
     public Page savePage(Document doc, Integer statusCode) {
+        return savePage(doc, statusCode, url);
+    }
+
+    private Page savePage(Document doc, Integer statusCode, String pageUrl) {
         if (doc == null) {
             log.warn("Failed to save page");
             return null;
         }
+        Page page = extractPage(doc, siteId, domain, pageUrl, statusCode);
+
+        pageContentStore.savePage(page);
+
+        return page;
+    }
+
+    /**
+     * Создаёт страницу из документа: текст, заголовок и путь относительно домена
+     * @param doc        - документ
+     * @param siteId     - id сайта
+     * @param domain     - домен
+     * @param url        - ссылка на страницу
+     * @param statusCode - код состояния
+     * @return страница (не сохранена в БД)
+     */
+    public static Page extractPage(Document doc, int siteId, String domain, String url, int statusCode) {
         String content = "";
         try {
             content = doc.body().text();
@@ -125,61 +175,33 @@ public class ParsePageTask extends RecursiveTask<Set<String>> {
             log.warn("Ошибка при получении заголовка страницы: {}", url);
         }
 
-        String path = url.substring(domain.length());
-        if (!path.endsWith("/")) {
-            path = path + "/";
-        }
-        Page page = new Page(siteId, path, statusCode, content, title);
-
-        pageRepository.save(page);
-
+        Page page = new Page(siteId, getPagePath(url, domain), statusCode, content, title);
+        page.setContentHash(Hashing.murmur3_128().hashString(content, StandardCharsets.UTF_8).asLong());
         return page;
     }
 
-    private void printMessageAboutPages(Integer statusCode, Integer countErrorPages) {
+    /**
+     * Путь страницы относительно домена, как в ссылке; для корня сайта - "/"
+     * @param url    - ссылка на страницу
+     * @param domain - домен
+     * @return путь
+     */
+    public static String getPagePath(String url, String domain) {
+        return url.length() > domain.length() ? url.substring(domain.length()) : "/";
+    }
+
+    private void printMessageAboutPages(Integer statusCode) {
         if (statusCode != 200) {
-            countErrorPages++;
+            session.getCountErrorPages().incrementAndGet();
             log.warn("url: {} {}", url, statusCode);
         }
+        int countErrorPages = session.getCountErrorPages().get();
         StringBuilder builder = new StringBuilder();
-        builder.append("Number of pages found: ").append(ANSI_BLUE).append(uniqueLinks.size()).append(ANSI_RESET);
+        builder.append("siteId: ").append(ANSI_CYAN).append(siteId).append(ANSI_RESET).append(" ");
+        builder.append("Number of pages found: ").append(ANSI_BLUE).append(session.getFrontier().size()).append(ANSI_RESET);
         if (countErrorPages > 0) {
             builder.append("Pages with errors ").append(ANSI_RED).append(countErrorPages).append(ANSI_RESET);
         }
         System.out.print(builder + "\r");
     }
-
-    private ParsePageTask prepareNewPage(String checkingUrl) {
-        ParsePageTask newParse = new ParsePageTask(parseLemma, pageRepository);
-        newParse.setUrl(checkingUrl);
-        newParse.setParent(this);
-        newParse.setDomain(domain);
-        newParse.setSiteId(siteId);
-        return newParse;
-    }
-
-    private boolean isValidUrl(String checkingUrl) {
-        if (checkingUrl.startsWith(domain)) {
-            if (checkingUrl.isEmpty() ||
-                    checkingUrl.contains("#") ||
-                    checkingUrl.contains(".jpg") ||
-                    checkingUrl.contains(".png")) {
-                return false;
-            }
-            return !isExistUrlInUniqueLinks(checkingUrl);
-        }
-        return false;
-    }
-
-    private boolean isExistUrlInUniqueLinks(String url) {
-        boolean isExist = uniqueLinks.containsKey(url);
-        if (!isExist) {
-            uniqueLinks.put(url, this);
-        }
-        return isExist;
-    }
-
-    public static void clearUniqueLinks() {
-        uniqueLinks.clear();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,159 @@
+package searchengine.parsing.sitemapping;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt для нашего User-Agent: Allow/Disallow, Crawl-delay и ссылки на sitemap.
+ * Берётся группа с самым длинным именем агента, которое входит в наш User-Agent, иначе группа "*".
+ * Из совпавших с путём правил действует самое длинное, при равной длине - Allow.
+ * В шаблонах правил "*" - любые символы, "$" в конце - конец пути.
+ */
+public class RobotsRules {
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), 0, List.of());
+    // robots.txt недоступен из-за ошибки сервера или сети: обходить сайт нельзя
+    public static final RobotsRules DISALLOW_ALL = new RobotsRules(
+            List.of(new Rule("/", compile("/"), false)), 0, List.of());
+
+    private final List<Rule> rules;             // по убыванию длины шаблона
+    @Getter
+    private final long crawlDelayMs;
+    @Getter
+    private final List<String> sitemaps;
+
+    private RobotsRules(List<Rule> rules, long crawlDelayMs, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelayMs = crawlDelayMs;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * Правила по ответу на запрос robots.txt: при ответе 2xx - разобранный файл, при ошибке сервера (5xx)
+     * или сети - DISALLOW_ALL (robots.txt может временно не отвечать, а запрещать обход), иначе (404 и т.п.) -
+     * ALLOW_ALL
+     * @param result    - ответ на запрос robots.txt
+     * @param userAgent - наш User-Agent
+     */
+    public static RobotsRules of(FetchResult result, String userAgent) {
+        if (result.isOk()) {
+            return parse(new String(result.body(), StandardCharsets.UTF_8), userAgent);
+        }
+        return result.statusCode() == 0 || result.statusCode() >= 500 ? DISALLOW_ALL : ALLOW_ALL;
+    }
+
+    /**
+     * Разбор robots.txt
+     * @param text      - содержимое robots.txt
+     * @param userAgent - наш User-Agent
+     * @return правила для нашего User-Agent
+     */
+    public static RobotsRules parse(String text, String userAgent) {
+        Map<String, Group> groups = new HashMap<>();
+        List<String> sitemaps = new ArrayList<>();
+        List<Group> current = new ArrayList<>();
+        boolean inRules = false;
+        for (String line : text.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (key) {
+                case "user-agent" -> {
+                    if (inRules) {
+                        current = new ArrayList<>();
+                        inRules = false;
+                    }
+                    current.add(groups.computeIfAbsent(value.toLowerCase(Locale.ROOT), k -> new Group()));
+                }
+                case "allow", "disallow" -> {
+                    inRules = true;
+                    if (!value.isEmpty()) {
+                        Rule rule = new Rule(value, compile(value), key.equals("allow"));
+                        current.forEach(group -> group.rules.add(rule));
+                    }
+                }
+                case "crawl-delay" -> {
+                    inRules = true;
+                    try {
+                        long delayMs = (long) (Double.parseDouble(value) * 1000);
+                        current.forEach(group -> group.crawlDelayMs = delayMs);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                case "sitemap" -> sitemaps.add(value);
+                default -> {
+                }
+            }
+        }
+
+        Group group = selectGroup(groups, userAgent.toLowerCase(Locale.ROOT));
+        if (group == null) {
+            return new RobotsRules(List.of(), 0, sitemaps);
+        }
+        group.rules.sort(Comparator.comparingInt((Rule rule) -> rule.pattern().length()).reversed()
+                .thenComparing(rule -> !rule.allow()));
+        return new RobotsRules(group.rules, group.crawlDelayMs, sitemaps);
+    }
+
+    /**
+     * Разрешено ли обходить путь
+     * @param path - путь с параметрами запроса, начинается с "/"
+     */
+    public boolean isAllowed(String path) {
+        for (Rule rule : rules) {
+            if (rule.regex().matcher(path).lookingAt()) {
+                return rule.allow();
+            }
+        }
+        return true;
+    }
+
+    private static Group selectGroup(Map<String, Group> groups, String userAgent) {
+        Group selected = null;
+        int selectedLength = 0;
+        for (Map.Entry<String, Group> entry : groups.entrySet()) {
+            String agent = entry.getKey();
+            if (!agent.equals("*") && !agent.isEmpty() && userAgent.contains(agent) && agent.length() > selectedLength) {
+                selected = entry.getValue();
+                selectedLength = agent.length();
+            }
+        }
+        return selected != null ? selected : groups.get("*");
+    }
+
+    private static Pattern compile(String pattern) {
+        boolean anchored = pattern.endsWith("$");
+        String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+        String[] parts = body.split("\\*", -1);
+        StringBuilder regex = new StringBuilder(Pattern.quote(parts[0]));
+        for (int i = 1; i < parts.length; i++) {
+            regex.append(".*").append(Pattern.quote(parts[i]));
+        }
+        if (anchored) {
+            regex.append("$");
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static class Group {
+        private final List<Rule> rules = new ArrayList<>();
+        private long crawlDelayMs;
+    }
+
+    private record Rule(String pattern, Pattern regex, boolean allow) {
+    }
+}
@@ -1,22 +1,42 @@
 package searchengine.parsing.sitemapping;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.nodes.Document;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
 import searchengine.config.Messages;
+import searchengine.config.SiteList;
+import searchengine.index.IndexGeneration;
+import searchengine.lemma.LemmaOccurrences;
+import searchengine.model.CrawlCheckpoint;
 import searchengine.model.Page;
 import searchengine.model.Site;
 import searchengine.model.Status;
+import searchengine.parsing.IndexingPipeline;
+import searchengine.parsing.KnownPage;
 import searchengine.parsing.ParseLemma;
+import searchengine.repository.PageContentStore;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Component
@@ -24,135 +44,444 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Setter
 @RequiredArgsConstructor
 public class SiteParser {
+    private static final int LEMMA_BATCH_PAGES = 32;     // страниц в одной пачке лемматизации
+    private static final long WAIT_MS = 1000;            // предел одного ожидания границы обхода
 
     private final PageRepository pageRepository;
+    private final PageContentStore pageContentStore;
     private final SiteRepository siteRepository;
     private final ParseLemma parseLemma;
+    private final IndexGeneration indexGeneration;
+    private final IndexingSettings indexingSettings;
+    private final SiteList siteList;
+    private final CheckpointService checkpointService;
+    private final PageFetcher pageFetcher;
 
-    private int siteId;
-    private String domain;
-    private String url;
+    private final Map<Integer, CrawlSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicBoolean isCancel = new AtomicBoolean(false);
+    private Semaphore fetchPermits;
 
-    public void initSiteParser(int siteId, String domain, String url) {
-        this.siteId = siteId;
-        this.domain = domain;
-        this.url = url;
+    @PostConstruct
+    private void init() {
+        fetchPermits = new Semaphore(Math.max(1, indexingSettings.getMaxTotalFetches()));
     }
 
-    private ParsePageTask parsePageTask;
-
-    private static AtomicBoolean isCancel = new AtomicBoolean(false);
-    public static void setCancel(boolean b) {
+    public void setCancel(boolean b) {
         isCancel.set(b);
     }
-    public static boolean isCancel() {
+
+    public boolean isCancel() {
         return isCancel.get();
     }
 
+    /**
+     * Остановка обхода всех сайтов
+     */
     public void forceStop() {
         setCancel(true);
-        pool.shutdownNow();
+        sessions.values().forEach(CrawlSession::cancel);
     }
 
-    private static final int PARALLELISM = 120;
-    private ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+    /**
+     * Обход и индексация одного сайта. Для каждого сайта создаётся своя CrawlSession,
+     * поэтому метод можно вызывать одновременно для разных сайтов.
+     * @param siteId - id сайта
+     * @param domain - домен
+     * @param url    - ссылка на сайт
+     * @param incremental - true: страницы из прошлой индексации проверяются условными запросами,
+     *                    переиндексируются только изменённые, исчезнувшие удаляются
+     * @param checkpoint  - контрольная точка прерванной индексации сайта или null
+     */
+    public void parseSite(int siteId, String domain, String url, boolean incremental, CrawlCheckpoint checkpoint) {
+        searchengine.config.Site siteConfig = getSiteConfig(url);
+        CrawlSession session = new CrawlSession(siteId, domain, url, fetchPermits,
+                new CrawlFrontier(indexingSettings.getFrontier(), UrlCanonicalizer::fingerprintKey),
+                createCanonicalizer(domain, siteConfig));
+        if (checkpoint != null) {
+            // страницы, сохранённые до контрольной точки, не сохраняются повторно
+            session.setKnownPages(pageRepository.findKnownPages(siteId));
+            session.setResumed(true);
+            log.info("Resume indexing siteId: {} phase: {} pending: {} checkpoint: {}", siteId,
+                    checkpoint.getPhase(), checkpoint.getPendingCount(), checkpoint.getUpdatedAt());
+        } else if (incremental) {
+            session.setKnownPages(pageRepository.findKnownPages(siteId));
+            log.info("Incremental indexing siteId: {} known pages: {}", siteId, session.getKnownPages().size());
+        }
+        sessions.put(siteId, session);
+        try {
+            if (isCancel()) {
+                session.cancel();
+            }
+            if (checkpoint != null && checkpoint.getPhase() == CrawlCheckpoint.Phase.LEMMAS) {
+                saveSite(session);      // обход закончен до остановки, продолжается запись лемм
+                return;
+            }
+            if (checkpoint != null) {
+                session.getFrontier().restore(checkpoint.getVisited(),
+                        CheckpointService.decodeUrls(checkpoint.getPending()));
+            }
+            getLinks(session);
+        } finally {
+            sessions.remove(siteId);
+        }
+    }
 
     /**
-     * Парсинг страниц
+     * Настройки сайта из indexing-settings.sites
+     * @param url - ссылка на сайт
+     * @return настройки сайта, пустые если сайт не задан в конфигурации
      */
-    public void getLinks() {
-        long delayInMilliseconds = 2;
-        pool = new ForkJoinPool(PARALLELISM);
-        parsePageTask = preparePage();
-        pool.execute(parsePageTask);
+    /**
+     * Правила канонических ссылок сайта
+     * @param domain     - домен
+     * @param siteConfig - сайт из конфигурации
+     */
+    public UrlCanonicalizer createCanonicalizer(String domain, searchengine.config.Site siteConfig) {
+        return new UrlCanonicalizer(domain, indexingSettings.getUrlFilter(), siteConfig.getInclude(),
+                siteConfig.getExclude());
+    }
 
-        while (!parsePageTask.isDone() && !isCancel()) {
-            try {
-                Thread.sleep(delayInMilliseconds);
-            } catch (InterruptedException ignored) {
+    private searchengine.config.Site getSiteConfig(String url) {
+        List<searchengine.config.Site> sites = siteList.getSites();
+        if (sites != null) {
+            for (searchengine.config.Site site : sites) {
+                if (site.getUrl().equals(url)) {
+                    return site;
+                }
+            }
+        }
+        return new searchengine.config.Site();
+    }
+
+    /**
+     * Парсинг страниц. Потоки пула берут ссылки из очереди CrawlFrontier сессии, пока очередь
+     * не опустеет и не закончится обработка последней взятой ссылки
+     * @param session - сессия обхода сайта
+     */
+    private void getLinks(CrawlSession session) {
+        IndexingSettings.Pipeline pipelineSettings = indexingSettings.getPipeline();
+        session.setPool(new ForkJoinPool(pipelineSettings.getFetchThreads()));
+        session.setPipeline(pipelineSettings.isEnabled()
+                ? new IndexingPipeline(pipelineSettings, pageRepository, pageContentStore, parseLemma,
+                session.getSiteId(), session.getDomain(), session.getKnownPages(), session::fail)
+                : null);
+        readRobots(session);
+        if (session.isResumed()) {
+            if (session.getPipeline() != null) {
+                // индексы, запись которых прервалась, удаляются; сохранённые до остановки страницы без лемм
+                // (их леммы остались в очередях конвейера) загружаются заново - их отпечатки уже восстановлены
+                // в границе, поэтому они ставятся в очередь в обход проверки найденных ссылок
+                int unfinished = parseLemma.getBulkIndexWriter().removeUnfinishedPages(session.getSiteId());
+                if (unfinished > 0) {
+                    log.info("siteId: {} pages with interrupted index write: {}", session.getSiteId(), unfinished);
+                }
+                session.getKnownPages().values().stream()
+                        .filter(page -> !page.isIndexed())
+                        .forEach(page -> session.getFrontier().requeue(session.getDomain() + page.path()));
+            }
+        } else {
+            if (session.isIncremental()) {
+                // страницы из прошлой индексации проверяются условными запросами сразу, не дожидаясь,
+                // пока до них дойдёт обход по ссылкам (на страницах с ответом 304 ссылки не разбираются)
+                session.getKnownPages().values().forEach(page -> session.addLink(session.getDomain() + page.path()));
+            }
+            if (!session.addLink(session.getUrl()) && session.getRobotsRules().isAllowed("/")) {
+                session.getFrontier().offer(session.getDomain() + "/");     // стартовая страница обходится всегда
             }
         }
+        for (int i = 0; i < pipelineSettings.getFetchThreads(); i++) {
+            session.getPool().execute(() -> crawl(session));
+        }
 
-        if (isCancel()) {
-            pool.shutdownNow();
-            forceStop();
-            log.info("Отмена индексации... ");
+        long checkpointIntervalMs = indexingSettings.getCheckpoint().getIntervalSec() * 1000L;
+        long waitMs = checkpointIntervalMs > 0 ? checkpointIntervalMs : WAIT_MS;
+        long nextCheckpoint = System.currentTimeMillis() + checkpointIntervalMs;
+        try {
+            // ожидание будят конец обхода и отмена сессии
+            while (!session.isCancelled()
+                    && !session.getFrontier().awaitFinished(Math.max(1, waitMs), TimeUnit.MILLISECONDS)) {
+                if (checkpointIntervalMs > 0 && System.currentTimeMillis() >= nextCheckpoint) {
+                    saveCheckpoint(session);
+                    nextCheckpoint = System.currentTimeMillis() + checkpointIntervalMs;
+                }
+                waitMs = checkpointIntervalMs > 0 ? nextCheckpoint - System.currentTimeMillis() : WAIT_MS;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            session.cancel();
+        }
+
+        if (session.isCancelled()) {
+            session.cancel();
+            log.info("Отмена индексации сайта siteId: {}", session.getSiteId());
         } else {
-            pool.shutdown();
+            session.getPool().shutdown();
+        }
+        try {
+            session.getPool().awaitTermination(1, TimeUnit.MINUTES);
+            if (!session.isCancelled() && session.getPipeline() != null) {
+                session.getPipeline().finish();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("siteId: {} index write failed", session.getSiteId(), e);
+            session.fail(e);
+        }
+        if (session.isCancelled()) {
+            saveCheckpoint(session);
+        }
+        saveSite(session);
+    }
+
+    /**
+     * Читает robots.txt сайта: правила обхода и Crawl-delay, затем ставит в очередь обхода ссылки
+     * из sitemap (указанных в robots.txt или /sitemap.xml) по убыванию priority. Так все потоки
+     * загрузки получают работу сразу, глубокие страницы и страницы без входящих ссылок не ждут
+     * обхода по ссылкам.
+     * Правила по ответу сервера - RobotsRules.of(): при 5xx или сетевой ошибке обход запрещён целиком
+     * @param session - сессия обхода сайта
+     */
+    private void readRobots(CrawlSession session) {
+        IndexingSettings.Robots settings = indexingSettings.getRobots();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        String domain = session.getDomain();
+        FetchResult result = pageFetcher.fetchFile(domain + "/robots.txt");
+        RobotsRules rules = RobotsRules.of(result, indexingSettings.getFetcher().getUserAgent());
+        session.setRobotsRules(rules);
+        if (rules == RobotsRules.DISALLOW_ALL) {
+            log.warn("siteId: {} robots.txt is unavailable ({}), crawling is disallowed", session.getSiteId(),
+                    result.statusCode());
+            return;
+        }
+        if (rules.getCrawlDelayMs() > 0) {
+            pageFetcher.setCrawlDelay(URI.create(domain).getHost(), rules.getCrawlDelayMs());
+        }
+        if (!settings.isSitemaps()) {
+            return;
         }
+        List<String> sitemaps = rules.getSitemaps().isEmpty() ? List.of(domain + "/sitemap.xml") : rules.getSitemaps();
+        AtomicInteger added = new AtomicInteger();
+        int read = new SitemapReader(pageFetcher, settings.getMaxSitemaps(), settings.getMaxSitemapUrls())
+                .read(sitemaps, entry -> {
+                    if (session.addLink(entry.url())) {
+                        added.incrementAndGet();
+                    }
+                    return !session.isCancelled();
+                });
+        log.info("siteId: {} robots.txt rules: {} crawl-delay: {} ms sitemap urls: {} queued: {}",
+                session.getSiteId(), result.isOk(), rules.getCrawlDelayMs(), read, added.get());
+    }
+
+    private void saveCheckpoint(CrawlSession session) {
         try {
-            parsePageTask.join();
-            saveSite();
+            checkpointService.saveCrawl(session);
         } catch (Exception e) {
-            log.error("parsePage.join() {}", e.getMessage());
+            log.error("Checkpoint siteId: {} is not saved: {}", session.getSiteId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Цикл потока обхода: загрузка страниц по ссылкам из очереди сессии
+     * @param session - сессия обхода сайта
+     */
+    private void crawl(CrawlSession session) {
+        CrawlFrontier frontier = session.getFrontier();
+        while (!session.isCancelled()) {
+            String url;
+            try {
+                url = frontier.poll(WAIT_MS, TimeUnit.MILLISECONDS);  // ссылки ещё могут появиться на загружаемых страницах
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (url == null) {
+                if (frontier.isFinished()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                // ссылки из контрольной точки в очередь попадают без проверки addLink()
+                if (session.getRobotsRules().isAllowed(url.substring(session.getDomain().length()))) {
+                    preparePage(session, url).run();
+                }
+            } catch (Exception e) {
+                log.warn("url: {} {}", url, e.getMessage());
+            } finally {
+                if (!session.isCancelled()) {
+                    frontier.done(url);     // при отмене ссылка остаётся необработанной в контрольной точке
+                }
+            }
         }
-        parsePageTask = null;
     }
 
     /**
      * Установка значений данных для парсинга страницы
+     * @param session - сессия обхода сайта
+     * @param url     - ссылка на страницу
      * @return обьект ParsePageTask
      */
-    private ParsePageTask preparePage() {
-        parsePageTask = new ParsePageTask(parseLemma, pageRepository);
+    private ParsePageTask preparePage(CrawlSession session, String url) {
+        ParsePageTask parsePageTask = new ParsePageTask(parseLemma, pageContentStore, pageFetcher);
 
         parsePageTask.setUrl(url);
-        parsePageTask.setDomain(domain);
-        parsePageTask.setParent(null);
-        parsePageTask.setSiteId(siteId);
+        parsePageTask.setDomain(session.getDomain());
+        parsePageTask.setSiteId(session.getSiteId());
+        parsePageTask.setSession(session);
         return parsePageTask;
     }
 
     /**
      * Сохраняет сайт в БД
+     * @param session - сессия обхода сайта
      */
-    private void saveSite() {
-        Site site = siteRepository.findById(siteId).orElse(null);
+    private void saveSite(CrawlSession session) {
+        Site site = siteRepository.findById(session.getSiteId()).orElse(null);
         if (site == null) {
-            log.warn("Сайт с ID: {} не найден", site);
+            log.warn("Сайт с ID: {} не найден", session.getSiteId());
             return;
         }
-        site.setStatus(isCancel() ? Status.FAILED : Status.INDEXING);
+        boolean cancelled = session.isCancelled();
+        site.setStatus(cancelled ? Status.FAILED : Status.INDEXING);
         site.setStatusTime(Utils.setNow());
 
-        getLemmasForAllPages(site);
+        try {
+            if (session.getPipeline() == null && !cancelled) {
+                checkpointService.saveLemmaPhase(site.getSiteId());
+                getLemmasForAllPages(site, session);
+            }
+            if (session.isIncremental() && !session.isResumed() && !session.isCancelled()) {
+                deleteMissingPages(session);
+            }
+            if (!session.isCancelled()) {
+                parseLemma.getBulkIndexWriter().compact(site.getSiteId());
+            }
+        } catch (Exception e) {
+            log.error("siteId: {} index write failed", site.getSiteId(), e);
+            session.fail(e);
+        }
+        indexGeneration.bump(site.getSiteId());
 
-        site.setStatus(isCancel() ? Status.FAILED : Status.INDEXED);
-        site.setLastError(isCancel() ? Messages.INDEXING_STOPPED_BY_USER : "");
+        cancelled = session.isCancelled();
+        if (!cancelled) {
+            checkpointService.delete(site.getSiteId());
+        }
+        site.setStatus(cancelled ? Status.FAILED : Status.INDEXED);
+        site.setLastError(session.getError() != null ? session.getError()
+                : cancelled ? Messages.INDEXING_STOPPED_BY_USER : "");
         site.setStatusTime(Utils.setNow());
         siteRepository.save(site);
         log.info("***** site '{}' saved", site.getName());
     }
 
     /**
-     * Проход по всем страницам сайта и сохранение лемм и индексов
-     * @param site - сущность site
+     * Удаляет страницы из прошлой индексации, которых больше нет на сайте, и неиспользуемые леммы
+     * @param session - сессия обхода сайта
      */
-    public void getLemmasForAllPages(Site site) {
-        int statusCode = 200;
-        List<Page> pageList = pageRepository.findBySiteIdAndCode(site.getSiteId(), statusCode);
-        parseLemma.setBeginPos(pageList.get(0).getPageId());
-        parseLemma.setEndPos(pageList.get(pageList.size() - 1).getPageId());
+    private void deleteMissingPages(CrawlSession session) {
+        List<KnownPage> missingPages = session.getMissingPages();
+        missingPages.forEach(page -> parseLemma.getBulkIndexWriter().removePage(session.getSiteId(), page.pageId(), true));
+        int lemmas = parseLemma.getBulkIndexWriter().deleteUnusedLemmas(session.getSiteId());
+        log.info("siteId: {} pages removed: {} lemmas removed: {}", session.getSiteId(), missingPages.size(), lemmas);
+    }
 
-        pageList.stream().takeWhile(e -> !isCancel()).forEach(this::parseSinglePage);
+    /**
+     * Проход по всем страницам сайта и сохранение лемм и индексов. Тексты страниц читаются из БД
+     * пачками по LEMMA_BATCH_PAGES по возрастанию page_id, пачки разбирают потоки пула
+     * indexing-settings.lemma-pass-threads. Следующая пачка читается, только когда в работе меньше
+     * двух пачек на поток, поэтому память не зависит от размера сайта.
+     * Каждый поток складывает frequency лемм своей пачки сам и передаёт в буфер записи пачку целиком
+     * @param site    - сущность site
+     * @param session - сессия обхода сайта
+     */
+    public void getLemmasForAllPages(Site site, CrawlSession session) {
+        int statusCode = 200;
+        int siteId = site.getSiteId();
+        int unfinished = parseLemma.getBulkIndexWriter().removeUnfinishedPages(siteId);
+        if (unfinished > 0) {
+            log.info("siteId: {} pages with interrupted index write: {}", siteId, unfinished);
+        }
+        int total = pageRepository.countBySiteIdAndCodeAndLemmaCountIsNull(siteId, statusCode);
+        if (total == 0) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        int batches = (total + LEMMA_BATCH_PAGES - 1) / LEMMA_BATCH_PAGES;
+        int threads = Math.max(1, Math.min(indexingSettings.getLemmaPassThreads(), batches));
+        ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("lemmas-" + siteId + "-%d")
+                .build());
+        Semaphore inFlight = new Semaphore(threads * 2);
+        AtomicInteger done = new AtomicInteger();
+        try {
+            int afterPageId = 0;
+            while (!session.isCancelled() && !isCancel()) {
+                List<Integer> batch = pageRepository.findUnindexedIdsAfter(siteId, statusCode, afterPageId,
+                        PageRequest.of(0, LEMMA_BATCH_PAGES));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                afterPageId = batch.get(batch.size() - 1);
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        parseBatch(siteId, batch, session, done, total);
+                    } catch (Exception e) {
+                        log.error("Ошибка записи лемм siteId: {}", siteId, e);
+                        session.fail(e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(threads * 2);      // дожидается последних пачек
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+        if (session.getError() == null) {
+            parseLemma.flush(siteId);
+        }
+        log.info("siteId: {} lemmatized pages: {} of {} threads: {} time: {} ms", siteId, done.get(),
+                total, threads, System.currentTimeMillis() - startTime);
     }
 
     /**
-     * Для отдельной страницы парсятся леммы и происходит запись лемм и индексов
-     * @param page - страница
+     * Леммы пачки страниц: тексты пачки читаются из PageContentStore одним запросом, вхождения
+     * и frequency лемм собираются в локальные map потока, в общий буфер записи пачка попадает одним вызовом
+     * @param siteId  - id сайта
+     * @param batch   - id страниц пачки
+     * @param session - сессия обхода сайта
+     * @param done    - счётчик обработанных страниц сайта
+     * @param total   - всего страниц сайта
      */
-    public void parseSinglePage(Page page) {
-        parseLemma.setCurrentPos(page.getPageId());
-        if (!isCancel()) {
-            parseLemma.parsing(page);
+    private void parseBatch(int siteId, List<Integer> batch, CrawlSession session, AtomicInteger done, int total) {
+        Map<Integer, String> contents = pageContentStore.loadAll(batch);
+        Map<Integer, Map<String, LemmaOccurrences>> pages = new HashMap<>(batch.size() * 4 / 3 + 1);
+        Map<String, Integer> frequencyDeltas = new HashMap<>();
+        for (Integer pageId : batch) {
+            if (session.isCancelled() || isCancel()) {
+                break;
+            }
+            Map<String, LemmaOccurrences> lemmas = parseLemma.lemmatize(siteId, pageId,
+                    contents.getOrDefault(pageId, ""));
+            pages.put(pageId, lemmas);              // страница без лемм получит lemma_count = 0
+            lemmas.keySet().forEach(lemma -> frequencyDeltas.merge(lemma, 1, Integer::sum));
         }
+        parseLemma.saveAll(siteId, pages, frequencyDeltas);
+        parseLemma.printMessageAboutProgress(siteId, done.addAndGet(batch.size()), total);
     }
 
     /**
-     * Сброс ссылок после выполнения работы
+     * Для отдельной страницы парсятся леммы и происходит запись лемм и индексов
+     * @param page - страница
      */
-    public void clearUniqueLinks() {
-        ParsePageTask.clearUniqueLinks();
+    public void parseSinglePage(Page page) {
+        parseLemma.parsing(page);
     }
 
     /**
@@ -163,9 +492,10 @@ public class SiteParser {
      * @return - сохранённая строаница
      */
     public Page savePage(String url, Site site, String domain) {
-        int statusCode = 200;
-        preparePage();
-        Document doc = parsePageTask.getDocumentByUrl(url, statusCode);
+        ParsePageTask parsePageTask = new ParsePageTask(parseLemma, pageContentStore, pageFetcher);
+        FetchResult result = parsePageTask.fetchPage(url, null, null);
+        int statusCode = result.statusCode();
+        Document doc = result.parse();
         parsePageTask.setSiteId(site.getSiteId());
         parsePageTask.setDomain(domain);
         parsePageTask.setUrl(url);
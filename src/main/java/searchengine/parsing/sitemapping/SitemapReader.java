@@ -0,0 +1,134 @@
+package searchengine.parsing.sitemapping;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Чтение sitemap.xml: ссылки страниц с lastmod и priority. Индексы sitemap (sitemapindex)
+ * раскрываются, сжатые gzip файлы распаковываются. Число файлов и ссылок ограничено.
+ * Ссылки не накапливаются: ссылки каждого файла сразу передаются обработчику, в памяти только один файл.
+ */
+@Slf4j
+public class SitemapReader {
+    private final PageFetcher fetcher;
+    private final int maxSitemaps;
+    private final int maxUrls;
+
+    /**
+     * @param fetcher     - загрузка файлов
+     * @param maxSitemaps - сколько файлов sitemap читать, включая вложенные
+     * @param maxUrls     - сколько ссылок страниц собрать
+     */
+    public SitemapReader(PageFetcher fetcher, int maxSitemaps, int maxUrls) {
+        this.fetcher = fetcher;
+        this.maxSitemaps = maxSitemaps;
+        this.maxUrls = maxUrls;
+    }
+
+    /**
+     * Передаёт обработчику ссылки страниц из sitemap; ссылки одного файла - по убыванию priority,
+     * при равном priority - сначала изменённые позже
+     * @param sitemapUrls - ссылки на sitemap или индексы sitemap
+     * @param consumer    - обработчик ссылки; false - прекратить чтение
+     * @return сколько ссылок прочитано
+     */
+    public int read(List<String> sitemapUrls, Predicate<Entry> consumer) {
+        Deque<String> queue = new ArrayDeque<>(sitemapUrls);
+        Set<String> seen = new HashSet<>();
+        int sitemaps = 0;
+        int read = 0;
+        reading:
+        while (!queue.isEmpty() && sitemaps < maxSitemaps && read < maxUrls) {
+            String url = queue.poll();
+            if (!seen.add(url)) {
+                continue;
+            }
+            sitemaps++;
+            Document doc = fetch(url);
+            if (doc == null) {
+                continue;
+            }
+            for (Element loc : doc.select("sitemap > loc")) {
+                queue.add(loc.text().trim());
+            }
+            List<Entry> entries = new ArrayList<>();
+            for (Element element : doc.select("url")) {
+                String loc = childText(element, "loc");
+                if (loc.isEmpty()) {
+                    continue;
+                }
+                entries.add(new Entry(loc, childText(element, "lastmod"), parsePriority(childText(element, "priority"))));
+                if (read + entries.size() >= maxUrls) {
+                    break;
+                }
+            }
+            entries.sort(Comparator.comparingDouble(Entry::priority).reversed()
+                    .thenComparing(Entry::lastmod, Comparator.reverseOrder()));
+            for (Entry entry : entries) {
+                read++;
+                if (!consumer.test(entry)) {
+                    break reading;
+                }
+            }
+        }
+        log.debug("Sitemaps read: {} urls: {}", sitemaps, read);
+        return read;
+    }
+
+    private Document fetch(String url) {
+        FetchResult result = fetcher.fetchFile(url);
+        if (!result.isOk() || result.body().length == 0) {
+            return null;
+        }
+        byte[] body = result.body();
+        try (InputStream in = isGzip(body) ? new GZIPInputStream(new ByteArrayInputStream(body))
+                : new ByteArrayInputStream(body)) {
+            return Jsoup.parse(in, "UTF-8", url, Parser.xmlParser());
+        } catch (IOException e) {
+            log.debug("Sitemap is not read: {} {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isGzip(byte[] body) {
+        return body.length > 2 && (body[0] & 0xFF) == 0x1F && (body[1] & 0xFF) == 0x8B;
+    }
+
+    private static String childText(Element element, String tag) {
+        Element child = element.selectFirst(tag);
+        return child == null ? "" : child.text().trim();
+    }
+
+    private static double parsePriority(String priority) {
+        try {
+            return priority.isEmpty() ? 0.5 : Double.parseDouble(priority);    // 0.5 - значение по умолчанию
+        } catch (NumberFormatException e) {
+            return 0.5;
+        }
+    }
+
+    /**
+     * Ссылка из sitemap
+     * @param url      - ссылка на страницу
+     * @param lastmod  - дата изменения страницы (W3C Datetime), пустая если не задана
+     * @param priority - приоритет страницы от 0 до 1
+     */
+    public record Entry(String url, String lastmod, double priority) {
+    }
+}
@@ -0,0 +1,201 @@
+package searchengine.parsing.sitemapping;
+
+import searchengine.config.IndexingSettings;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Приведение ссылок сайта к каноническому виду и отбор ссылок для обхода. Все шаблоны компилируются
+ * один раз при создании, экземпляр создаётся на сессию обхода и используется всеми её потоками.
+ * <ul>
+ *     <li>схема и хост: только http/https и хост сайта, без www, без порта по умолчанию;
+ *     ссылка получает схему сайта, поэтому http- и https-варианты страницы совпадают</li>
+ *     <li>путь: без фрагмента (#...), ;jsessionid=..., повторных "/" и сегментов "." и "..";
+ *     завершающий "/" не добавляется и не удаляется - страница загружается и сохраняется по своему пути</li>
+ *     <li>параметры запроса: удаляются параметры из indexing-settings.url-filter.strip-params
+ *     (utm_*, идентификаторы сессий и т.п.), остальные сортируются</li>
+ *     <li>отбрасываются ссылки с расширением из deny-extensions, глубже max-depth сегментов
+ *     и не прошедшие шаблоны include/exclude сайта</li>
+ * </ul>
+ * Пути /about и /about/ обычно ведут на одну страницу, поэтому в множестве найденных ссылок
+ * они совпадают: отпечаток считается по fingerprintKey(), а не по самой ссылке.
+ */
+public class UrlCanonicalizer {
+    private static final Pattern SESSION_PATH_PARAM = Pattern.compile(";jsessionid=[^/?#]*", Pattern.CASE_INSENSITIVE);
+
+    private final String domain;
+    private final String host;
+    private final Set<String> denyExtensions = new HashSet<>();
+    private final List<Pattern> stripParams = new ArrayList<>();
+    private final boolean stripQuery;
+    private final int maxDepth;
+    private final List<Pattern> include = new ArrayList<>();
+    private final List<Pattern> exclude = new ArrayList<>();
+
+    /**
+     * @param domain   - протокол и домен сайта, например https://skillbox.ru
+     * @param settings - общие правила отбора ссылок
+     * @param include  - регулярные выражения пути сайта: если заданы, обходятся только совпавшие пути
+     * @param exclude  - регулярные выражения пути сайта, которые не обходятся
+     */
+    public UrlCanonicalizer(String domain, IndexingSettings.UrlFilter settings, List<String> include,
+                            List<String> exclude) {
+        this.domain = domain;
+        this.host = normalizeHost(URI.create(domain).getHost());
+        settings.getDenyExtensions().forEach(extension -> denyExtensions.add(extension.toLowerCase(Locale.ROOT)));
+        settings.getStripParams().forEach(param -> stripParams.add(globToPattern(param)));
+        this.stripQuery = settings.isStripQuery();
+        this.maxDepth = settings.getMaxDepth();
+        include.forEach(regex -> this.include.add(Pattern.compile(regex)));
+        exclude.forEach(regex -> this.exclude.add(Pattern.compile(regex)));
+    }
+
+    /**
+     * Каноническая ссылка
+     * @param url - абсолютная ссылка
+     * @return каноническая ссылка или null, если ссылку обходить не нужно
+     */
+    public String canonicalize(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        URI uri;
+        try {
+            uri = new URI(url.trim());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String scheme = uri.getScheme();
+        if (scheme == null || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))) {
+            return null;
+        }
+        if (!host.equals(normalizeHost(uri.getHost()))) {
+            return null;
+        }
+        int port = uri.getPort();
+        if (port != -1 && port != 80 && port != 443) {
+            return null;
+        }
+        String path = normalizePath(uri.getRawPath());
+        if (path == null) {
+            return null;
+        }
+        String query = stripQuery ? null : normalizeQuery(uri.getRawQuery());
+        String relative = query == null ? path : path + "?" + query;
+        return isAllowed(relative) ? domain + relative : null;
+    }
+
+    /**
+     * Ключ ссылки для множества найденных ссылок CrawlFrontier: путь без расширения дополняется "/".
+     * Только для отпечатка - загружается и сохраняется сама ссылка
+     * @param url - каноническая ссылка
+     * @return ключ
+     */
+    public static String fingerprintKey(String url) {
+        int query = url.indexOf('?');
+        String path = query < 0 ? url : url.substring(0, query);
+        int slash = path.lastIndexOf('/');
+        if (path.endsWith("/") || slash <= path.indexOf("//") + 1 || path.indexOf('.', slash + 1) >= 0) {
+            return url;
+        }
+        return query < 0 ? path + "/" : path + "/" + url.substring(query);
+    }
+
+    private boolean isAllowed(String relative) {
+        for (Pattern pattern : exclude) {
+            if (pattern.matcher(relative).find()) {
+                return false;
+            }
+        }
+        if (include.isEmpty()) {
+            return true;
+        }
+        for (Pattern pattern : include) {
+            if (pattern.matcher(relative).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String normalizePath(String rawPath) {
+        if (rawPath == null || rawPath.isEmpty()) {
+            return "/";
+        }
+        String path = SESSION_PATH_PARAM.matcher(rawPath).replaceAll("");
+        boolean directory = path.endsWith("/") || path.endsWith("/.") || path.endsWith("/..");
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                segments.pollLast();
+                continue;
+            }
+            segments.addLast(segment);
+        }
+        if (maxDepth > 0 && segments.size() > maxDepth) {
+            return null;
+        }
+        if (segments.isEmpty()) {
+            return "/";
+        }
+        String last = segments.peekLast();
+        int dot = last.lastIndexOf('.');
+        String extension = dot < 0 ? "" : last.substring(dot + 1).toLowerCase(Locale.ROOT);
+        if (denyExtensions.contains(extension)) {
+            return null;
+        }
+        String joined = "/" + String.join("/", segments);
+        return directory ? joined + "/" : joined;
+    }
+
+    private String normalizeQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+        List<String> params = new ArrayList<>();
+        for (String param : rawQuery.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int eq = param.indexOf('=');
+            String name = eq < 0 ? param : param.substring(0, eq);
+            if (stripParams.stream().noneMatch(pattern -> pattern.matcher(name).matches())) {
+                params.add(param);
+            }
+        }
+        if (params.isEmpty()) {
+            return null;
+        }
+        params.sort(null);
+        return String.join("&", params);
+    }
+
+    private static String normalizeHost(String host) {
+        if (host == null) {
+            return "";
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    private static Pattern globToPattern(String glob) {
+        String[] parts = glob.split("\\*", -1);
+        StringBuilder regex = new StringBuilder(Pattern.quote(parts[0]));
+        for (int i = 1; i < parts.length; i++) {
+            regex.append(".*").append(Pattern.quote(parts[i]));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+}
@@ -1,7 +1,5 @@
 package searchengine.parsing.sitemapping;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.regex.Pattern;
 
@@ -17,22 +15,22 @@ public class Utils {
     public static final String ANSI_CYAN = "\u001B[36m";
     public static final String ANSI_WHITE = "\u001B[37m";
 
+    private static final Pattern PROTOCOL_AND_DOMAIN =
+            Pattern.compile("(^https?://)(?:[^@/\\n]+@)?(?:www\\.)?([^:/\\n?#]+)", Pattern.CASE_INSENSITIVE);
+
     /**
-     * Возврат домена
+     * Возврат домена: протокол и хост без www
      * @param url - ссылка
      * @return - домен
      */
     public static String getProtocolAndDomain(String url) {
-        String regEx = "(^https:\\/\\/)(?:[^@\\/\\n]+@)?(?:www\\.)?([^:\\/\\n]+)";
-        ByteBuffer buffer = StandardCharsets.UTF_8.encode(regEx);
-        String utf8EncodedString = StandardCharsets.UTF_8.decode(buffer).toString();
-        Pattern pattern = Pattern.compile(utf8EncodedString);
-        return pattern.matcher(url)
+        return PROTOCOL_AND_DOMAIN.matcher(url)
             .results()
-            .map(m -> m.group(1) + m.group(2))
+            .map(m -> m.group(1).toLowerCase() + m.group(2).toLowerCase())
             .findFirst()
             .orElseThrow();
     }
+
     public static Timestamp setNow() {
         return new Timestamp(System.currentTimeMillis());
     }
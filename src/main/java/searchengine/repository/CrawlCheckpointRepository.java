@@ -0,0 +1,12 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import searchengine.model.CrawlCheckpoint;
+
+import javax.transaction.Transactional;
+
+@Repository
+@Transactional
+public interface CrawlCheckpointRepository extends JpaRepository<CrawlCheckpoint, Integer> {
+}
@@ -0,0 +1,76 @@
+package searchengine.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+/**
+ * Подготовка таблицы lemma к уникальному ключу (site_id, lemma): в прежней схеме параллельная запись
+ * могла создать несколько строк одной леммы сайта, и Hibernate (ddl-auto: update) не смог бы добавить ключ.
+ * Выполняется до создания EntityManagerFactory, один раз - пока дубликаты есть: индексы дубликатов
+ * переносятся на лемму с наименьшим lemma_id, frequency пересчитывается по страницам, дубликаты удаляются.
+ * Всё выполняется в одной транзакции
+ */
+@Slf4j
+@Component(LemmaKeyMigration.BEAN_NAME)
+public class LemmaKeyMigration {
+    static final String BEAN_NAME = "lemmaKeyMigration";
+
+    // лемма, которая остаётся, для каждой леммы сайта с дубликатами
+    private static final String KEPT_LEMMAS = "(select site_id, lemma, min(lemma_id) lemma_id " +
+            "from search_engine.lemma group by site_id, lemma having count(*) > 1)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public LemmaKeyMigration(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @PostConstruct
+    public void migrate() {
+        Integer tables = jdbcTemplate.queryForObject("select count(*) from information_schema.tables " +
+                "where table_schema = 'search_engine' and table_name in ('lemma', 'index_melnikov')", Integer.class);
+        if (tables == null || tables < 2) {
+            return;
+        }
+        Integer duplicates = jdbcTemplate.queryForObject("select count(*) from " + KEPT_LEMMAS + " d", Integer.class);
+        if (duplicates == null || duplicates == 0) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("update search_engine.index_melnikov i " +
+                    "join search_engine.lemma l on l.lemma_id = i.lemma_id " +
+                    "join " + KEPT_LEMMAS + " k on k.site_id = l.site_id and k.lemma = l.lemma " +
+                    "and k.lemma_id <> l.lemma_id set i.lemma_id = k.lemma_id");
+            // страница, на которой встречались несколько дубликатов, сохраняет один индекс
+            jdbcTemplate.update("delete i2 from search_engine.index_melnikov i1 " +
+                    "join search_engine.index_melnikov i2 on i2.page_id = i1.page_id and i2.lemma_id = i1.lemma_id " +
+                    "and i2.index_id > i1.index_id " +
+                    "join " + KEPT_LEMMAS + " k on k.lemma_id = i1.lemma_id");
+            jdbcTemplate.update("update search_engine.lemma l join " + KEPT_LEMMAS + " k on k.lemma_id = l.lemma_id " +
+                    "set l.frequency = (select count(*) from search_engine.index_melnikov i where i.lemma_id = l.lemma_id)");
+            jdbcTemplate.update("delete l from search_engine.lemma l join " + KEPT_LEMMAS + " k " +
+                    "on k.site_id = l.site_id and k.lemma = l.lemma and k.lemma_id <> l.lemma_id");
+        });
+        log.info("Duplicate lemmas merged: {} time: {} ms", duplicates, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * EntityManagerFactory (и обновление схемы Hibernate) создаётся после миграции
+     */
+    @Component
+    static class EntityManagerFactoryDependency extends EntityManagerFactoryDependsOnPostProcessor {
+        EntityManagerFactoryDependency() {
+            super(BEAN_NAME);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package searchengine.repository;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.Page;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Хранилище текстов страниц в таблице page_content: текст сжимается deflate и лежит отдельно
+ * от строки page, поэтому чтение метаданных страниц (путь, заголовок, код) не тянет за собой текст.
+ * Тексты, оставшиеся в прежнем столбце page.content, переносятся сюда один раз после старта.
+ */
+@Slf4j
+@Repository
+public class PageContentStore {
+    private static final String UPSERT = "insert into search_engine.page_content(page_id, content) values (?, ?) " +
+            "on duplicate key update content = values(content)";
+    private static final int MIGRATION_BATCH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PageRepository pageRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public PageContentStore(JdbcTemplate jdbcTemplate, PageRepository pageRepository,
+                            TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.pageRepository = pageRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Сохраняет страницу и её текст (page.getContent()) в одной транзакции
+     * @param page - страница; у новой страницы после сохранения заполнен pageId
+     */
+    public void savePage(Page page) {
+        transactionTemplate.executeWithoutResult(status -> {
+            pageRepository.save(page);
+            save(page.getPageId(), page.getContent());
+        });
+    }
+
+    /**
+     * Сохраняет текст страницы
+     * @param pageId  - id страницы
+     * @param content - текст
+     */
+    public void save(int pageId, String content) {
+        jdbcTemplate.update(UPSERT, pageId, compress(content == null ? "" : content));
+    }
+
+    /**
+     * Текст страницы
+     * @param pageId - id страницы
+     * @return текст, пустая строка если текста нет
+     */
+    public String load(int pageId) {
+        List<byte[]> rows = jdbcTemplate.query("select content from search_engine.page_content where page_id = ?",
+                (rs, rowNum) -> rs.getBytes(1), pageId);
+        return rows.isEmpty() ? "" : decompress(rows.get(0));
+    }
+
+    /**
+     * Тексты нескольких страниц одним запросом
+     * @param pageIds - id страниц
+     * @return id страницы -> текст; страниц без текста в результате нет
+     */
+    public Map<Integer, String> loadAll(Collection<Integer> pageIds) {
+        Map<Integer, String> contents = new HashMap<>(pageIds.size() * 4 / 3 + 1);
+        if (pageIds.isEmpty()) {
+            return contents;
+        }
+        String sql = "select page_id, content from search_engine.page_content where page_id in ("
+                + String.join(",", Collections.nCopies(pageIds.size(), "?")) + ")";
+        jdbcTemplate.query(sql, rs -> {
+            contents.put(rs.getInt(1), decompress(rs.getBytes(2)));
+        }, pageIds.toArray());
+        return contents;
+    }
+
+    public void delete(int pageId) {
+        jdbcTemplate.update("delete from search_engine.page_content where page_id = ?", pageId);
+    }
+
+    /**
+     * Удаляет тексты всех страниц сайта, вызывается до удаления самих страниц
+     * @param siteId - id сайта
+     */
+    public void deleteBySiteId(int siteId) {
+        jdbcTemplate.update("delete c from search_engine.page_content c " +
+                "join search_engine.page p on p.page_id = c.page_id where p.site_id = ?", siteId);
+    }
+
+    /**
+     * Перенос текстов из столбца page.content прежней схемы. Выполняется в отдельном потоке, чтобы
+     * не задерживать старт приложения, и только пока столбец есть: после переноса он удаляется
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startLegacyMigration() {
+        Integer columns = jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where table_schema = 'search_engine' and table_name = 'page' and column_name = 'content'", Integer.class);
+        if (columns == null || columns == 0) {
+            return;
+        }
+        ExecutorService migration = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("content-migration-%d")
+                .setDaemon(true)
+                .build());
+        migration.execute(() -> {
+            try {
+                migrateLegacyContent();
+            } catch (Exception e) {
+                log.error("Page content migration failed, it will be resumed on next start", e);
+            }
+        });
+        migration.shutdown();
+    }
+
+    /**
+     * Пачками по MIGRATION_BATCH страниц текст сжимается в page_content, а в page.content ставится NULL;
+     * каждая пачка - одна транзакция. В конце прежний столбец удаляется
+     */
+    void migrateLegacyContent() {
+        long startTime = System.currentTimeMillis();
+        int migrated = 0;
+        int lastPageId = 0;
+        while (true) {
+            List<Object[]> rows = new ArrayList<>();
+            int afterPageId = lastPageId;
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.query("select page_id, content from search_engine.page " +
+                        "where page_id > ? and content is not null order by page_id limit ? for update", rs -> {
+                    rows.add(new Object[]{rs.getInt(1), compress(rs.getString(2))});
+                }, afterPageId, MIGRATION_BATCH);
+                if (rows.isEmpty()) {
+                    return;
+                }
+                jdbcTemplate.batchUpdate(UPSERT, rows);
+                jdbcTemplate.update("update search_engine.page set content = null where page_id between ? and ?",
+                        rows.get(0)[0], rows.get(rows.size() - 1)[0]);
+            });
+            if (rows.isEmpty()) {
+                break;
+            }
+            lastPageId = (int) rows.get(rows.size() - 1)[0];
+            migrated += rows.size();
+        }
+        jdbcTemplate.execute("alter table search_engine.page drop column content");
+        log.info("Page content moved to page_content: {} pages time: {} ms", migrated,
+                System.currentTimeMillis() - startTime);
+    }
+
+    static byte[] compress(String content) {
+        byte[] input = content.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 3));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decompress(byte[] data) {
+        if (data == null || data.length == 0) {
+            return "";
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted page content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
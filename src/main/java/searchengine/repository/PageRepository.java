@@ -1,8 +1,13 @@
 package searchengine.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Page;
+import searchengine.parsing.KnownPage;
 
 import javax.transaction.Transactional;
 import java.util.List;
@@ -12,11 +17,36 @@ import java.util.List;
 public interface PageRepository extends JpaRepository<Page, Long> {
     int countBySiteId(int siteId);
 
-    List<Page> findBySiteIdAndCode(int siteId, int code);
+    int countBySiteIdAndCodeAndLemmaCountIsNull(int siteId, int code);
+
+    /**
+     * Следующая пачка id страниц сайта, леммы которых ещё не записаны, по возрастанию page_id
+     * (keyset-пагинация): каждая пачка читается отдельным запросом с LIMIT, тексты страниц
+     * затем читаются одним запросом из PageContentStore
+     * @param siteId      - id сайта
+     * @param code        - код ответа
+     * @param afterPageId - id последней страницы предыдущей пачки, 0 для первой
+     * @param pageable    - размер пачки, PageRequest.of(0, size)
+     */
+    @Query("select p.pageId from Page p " +
+            "where p.siteId = :siteId and p.code = :code and p.pageId > :afterPageId and p.lemmaCount is null " +
+            "order by p.pageId")
+    List<Integer> findUnindexedIdsAfter(@Param("siteId") int siteId, @Param("code") int code,
+                                        @Param("afterPageId") int afterPageId, Pageable pageable);
 
     void deleteAllBySiteId(int siteId);
 
     Page findBySiteIdAndPath(int siteId, String uri);
 
     Page findByPageId(Integer pageId);
+
+    @Query("select new searchengine.parsing.KnownPage(p.pageId, p.path, p.etag, p.lastModified, p.contentHash, " +
+            "p.lemmaCount) " +
+            "from Page p where p.siteId = :siteId")
+    List<KnownPage> findKnownPages(@Param("siteId") int siteId);
+
+    @Modifying
+    @Query("update Page p set p.etag = :etag, p.lastModified = :lastModified where p.pageId = :pageId")
+    void updateValidators(@Param("pageId") int pageId, @Param("etag") String etag,
+                          @Param("lastModified") String lastModified);
 }
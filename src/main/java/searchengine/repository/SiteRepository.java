@@ -20,5 +20,7 @@ public interface SiteRepository extends JpaRepository<Site, Integer> {
 
     boolean existsByName(String name);
 
+    List<Site> findByStatus(Status status);
+
     Site getSiteEBySiteId(int siteId);
 }
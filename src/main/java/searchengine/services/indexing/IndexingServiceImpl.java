@@ -3,25 +3,32 @@ package searchengine.services.indexing;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import searchengine.config.IndexingSettings;
 import searchengine.config.Messages;
 import searchengine.config.SiteList;
 import searchengine.dto.Response;
 import searchengine.dto.indexing.IndexingErrorResponse;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.index.IndexGeneration;
+import searchengine.index.SiteDirectory;
 import searchengine.model.*;
+import searchengine.parsing.sitemapping.CheckpointService;
+import searchengine.parsing.sitemapping.ParsePageTask;
 import searchengine.parsing.sitemapping.SiteParser;
 import searchengine.parsing.sitemapping.Utils;
-import searchengine.repository.IndexRepository;
 import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageContentStore;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 
 import java.sql.Timestamp;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -34,12 +41,16 @@ import javax.transaction.Transactional;
 public class IndexingServiceImpl implements IndexingService {
 
     private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
     private final SiteParser siteParser;
     private final SiteList siteListFromConfig;
-    private final List<Site> siteList = new ArrayList<>();
+    private final List<Site> siteList = new CopyOnWriteArrayList<>();
     private final PageRepository pageRepository;
+    private final PageContentStore pageContentStore;
     private final SiteRepository siteRepository;
+    private final IndexGeneration indexGeneration;
+    private final SiteDirectory siteDirectory;
+    private final IndexingSettings indexingSettings;
+    private final CheckpointService checkpointService;
     private ThreadPoolExecutor executor;
 
      /* Запуск полной индексации
@@ -48,7 +59,7 @@ public class IndexingServiceImpl implements IndexingService {
     @Override
     public Response startIndexing() {
         Response response;
-        SiteParser.setCancel(false);
+        siteParser.setCancel(false);
         if (isIndexingSuccessful()) {
             IndexingResponse responseTrue = new IndexingResponse();
             responseTrue.setResult(true);
@@ -72,17 +83,18 @@ public class IndexingServiceImpl implements IndexingService {
                 .reduce(0, Integer::sum) > 0) {
             return false;
         }
-        siteParser.clearUniqueLinks();
+        siteList.clear();
 
         final ThreadFactory threadFactory = new ThreadFactoryBuilder()
                 .setNameFormat("Cайт: %d")
                 .build();
-        executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(1, threadFactory);
-        executor.setMaximumPoolSize(Runtime.getRuntime().availableProcessors());
+        // каждый сайт обходится в своей CrawlSession, поэтому сайты индексируются параллельно
+        executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(
+                Math.max(1, indexingSettings.getMaxParallelSites()), threadFactory);
 
         siteListFromConfig.getSites().forEach(e -> {
             boolean isCreate = !siteRepository.existsByName(e.getName());
-            if (SiteParser.isCancel()) {
+            if (siteParser.isCancel()) {
                 executor.shutdownNow();
             } else {
                 executor.execute(() -> parseOneSite(e.getUrl(), e.getName(), isCreate));
@@ -101,11 +113,13 @@ public class IndexingServiceImpl implements IndexingService {
      */
     @Transactional
     void parseOneSite(String url, String name, boolean isCreate) {
-        if (SiteParser.isCancel()) {
+        if (siteParser.isCancel()) {
             return;
         }
         Site site;
         int siteId;
+        boolean incremental = false;
+        CrawlCheckpoint checkpoint = null;
         if (isCreate) {
             site = new Site(Status.INDEXING, Utils.setNow(), url, name);
             log.info("***** Site '{}' added", name);
@@ -118,18 +132,22 @@ public class IndexingServiceImpl implements IndexingService {
             site.setStatus(Status.INDEXING);
 
             log.info("****** Site '{}' changed", site.getName());
-            deleteByName(name);
+            // остановленная или прерванная индексация продолжается с контрольной точки
+            checkpoint = checkpointService.load(site.getSiteId());
+            // инкрементальная индексация работает только через конвейер, иначе - полная переиндексация
+            incremental = indexingSettings.isIncremental() && indexingSettings.getPipeline().isEnabled();
+            if (checkpoint == null && !incremental) {
+                deleteByName(name);
+            }
         }
 
         site = siteRepository.save(site);
+        siteDirectory.invalidate();
         siteId = site.getSiteId();
         siteList.add(site);
 
-        /* подготовка данных */
-        siteParser.initSiteParser(siteId, Utils.getProtocolAndDomain(url), url);
-
         /* вызов парсинга сайта */
-        siteParser.getLinks();
+        siteParser.parseSite(siteId, Utils.getProtocolAndDomain(url), url, incremental, checkpoint);
     }
 
     /**
@@ -143,19 +161,41 @@ public class IndexingServiceImpl implements IndexingService {
 
             log.warn("lemma deleteAllBySiteId: {}", siteId);
             try {
+                siteParser.getParseLemma().getBulkIndexWriter().removeSite(siteId);
                 lemmaRepository.deleteAllBySiteId(siteId);
             } catch (Exception e) {
                 log.error("lemmaRepository.deleteAllBySiteIdInBatch() message: {}", e.getMessage());
             }
             log.warn("page deleteAllBySiteId: {}", siteId);
             try {
+                pageContentStore.deleteBySiteId(siteId);
                 pageRepository.deleteAllBySiteId(siteId);
             } catch (Exception e) {
                 log.error("pageRepository.deleteAllBySiteIdInBatch() message: {}", e.getMessage());
             }
+            checkpointService.delete(siteId);
+            indexGeneration.bump(siteId);
+            siteDirectory.invalidate();
         }
     }
 
+    /**
+     * После перезапуска приложения сайты, индексация которых была прервана, остаются в статусе INDEXING
+     * и блокируют новый запуск индексации. Такие сайты отмечаются FAILED; при следующем запуске
+     * индексация продолжится с контрольной точки
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void markInterruptedSites() {
+        List<Site> interrupted = siteRepository.findByStatus(Status.INDEXING);
+        interrupted.forEach(site -> {
+            site.setStatus(Status.FAILED);
+            site.setStatusTime(Utils.setNow());
+            site.setLastError(Messages.INDEXING_INTERRUPTED);
+            log.warn("Site '{}' indexing was interrupted", site.getName());
+        });
+        siteRepository.saveAll(interrupted);
+    }
+
     /******************************************************************************************
      * Метод останавливает текущий процесс индексации
      * @return response (Успешно или ошибка)
@@ -235,7 +275,6 @@ public class IndexingServiceImpl implements IndexingService {
      * @return true -Успешно, false -ошибка
      */
     private boolean isIndexPage(String url) {
-        SiteParser.setCancel(false);
         String domain = Utils.getProtocolAndDomain(url);
 
         if (siteListFromConfig.getSites().stream()
@@ -249,6 +288,12 @@ public class IndexingServiceImpl implements IndexingService {
         if (site == null) {
             return false;
         }
+        // страница хранится под канонической ссылкой, как при обходе сайта
+        String canonical = siteParser.createCanonicalizer(domain, site).canonicalize(url);
+        if (canonical == null) {
+            log.warn("url: {} is excluded by url-filter", url);
+            return false;
+        }
 
         String name = site.getName();
 
@@ -259,13 +304,14 @@ public class IndexingServiceImpl implements IndexingService {
             siteE.setStatus(Status.INDEXING);
             siteE.setStatusTime(Utils.setNow());
 
-            String path = url.substring(domain.length());
-            deletePage(siteE.getSiteId(), path);
+            deletePage(siteE.getSiteId(), ParsePageTask.getPagePath(canonical, domain));
         }
         siteE.setLastError("");
         siteRepository.save(siteE);
 
-        if (!saveLemmasAndIndicesForOnePage(url, siteE, domain)) {
+        boolean saved = saveLemmasAndIndicesForOnePage(canonical, siteE, domain);
+        indexGeneration.bump(siteE.getSiteId());        // прежняя версия страницы удалена в любом случае
+        if (!saved) {
             return false;
         }
 
@@ -294,7 +340,17 @@ public class IndexingServiceImpl implements IndexingService {
         if (page == null) {
             return false;
         }
-        siteParser.parseSinglePage(page);
+        try {
+            siteParser.parseSinglePage(page);
+            siteParser.getParseLemma().flush(site.getSiteId());
+        } catch (Exception e) {
+            log.error("Ошибка записи лемм страницы {}", url, e);
+            site.setStatus(Status.FAILED);
+            site.setStatusTime(Utils.setNow());
+            site.setLastError(Messages.INDEX_WRITE_FAILED + e.getMessage());
+            siteRepository.save(site);
+            return false;
+        }
         return true;
     }
 
@@ -307,27 +363,10 @@ public class IndexingServiceImpl implements IndexingService {
         log.info("The page {} by sideId: {} is deleted", path, siteId);
         Page page = pageRepository.findBySiteIdAndPath(siteId, path);
         if (page != null) {
-            deleteLemmas(page, siteId);
-            pageRepository.delete(page);
+            // уменьшает frequency лемм страницы, удаляет её индексы и саму страницу
+            siteParser.getParseLemma().getBulkIndexWriter().removePage(siteId, page.getPageId(), true);
+            lemmaRepository.deleteBySiteIdAndFrequency(siteId, 0);      // delete if Frequency == 0
+            log.info("Lemmas by pageId: {} are removed", page.getPageId());
         }
     }
-
-    /**
-     * Уменьшает Frequency и Удаляет леммы == 0
-     * @param page   - страница
-     * @param siteId - id сайта
-     */
-    private void deleteLemmas(Page page, int siteId) {
-        List<Index> indexList = indexRepository.findByPageId(page.getPageId());
-        List<Lemma> lemmaList = new ArrayList<>();
-        indexList.forEach(e -> {
-                    Lemma lemma = lemmaRepository.findByLemmaId(e.getLemmaId());
-                    lemma.setFrequency(lemma.getFrequency() - 1);          // Frequency - 1
-                    lemmaList.add(lemma);
-                }
-        );
-        lemmaRepository.saveAll(lemmaList);
-        log.info("Lemmas by pageId: {} are removed", page.getPageId());
-        lemmaRepository.deleteBySiteIdAndFrequency(siteId, 0);      // delete if Frequency == 0
-    }
 }
@@ -0,0 +1,38 @@
+package searchengine.services.search;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.model.Lemma;
+
+import java.util.List;
+
+/**
+ * Абсолютная релевантность - сумма рангов лемм на странице, далее нормируется на максимум по всем сайтам выдачи
+ */
+@Component
+public class AbsoluteRankingModel implements RankingModel {
+
+    @Override
+    public SearchSettings.Ranking.Model getModel() {
+        return SearchSettings.Ranking.Model.ABSOLUTE;
+    }
+
+    @Override
+    public PageScorer prepare(int siteId, List<Lemma> lemmas) {
+        return new PageScorer() {
+            @Override
+            public double score(int pageId, float[] ranks) {
+                double absolute = 0;
+                for (float rank : ranks) {
+                    absolute += rank;
+                }
+                return absolute;
+            }
+
+            @Override
+            public double bound(float[] maxRanks) {
+                return score(0, maxRanks);
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package searchengine.services.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.index.DocumentStatistics;
+import searchengine.model.Lemma;
+
+import java.util.List;
+
+/**
+ * BM25: вклад леммы растёт с её рангом на странице с насыщением (k1), уменьшается для длинных
+ * страниц (b) и умножается на IDF - чем на меньшем числе страниц сайта встречается лемма, тем он больше.
+ * Число страниц с леммой - Lemma.frequency, число и длины страниц - DocumentStatistics.
+ */
+@Component
+@RequiredArgsConstructor
+public class Bm25RankingModel implements RankingModel {
+    private final DocumentStatistics documentStatistics;
+    private final SearchSettings searchSettings;
+
+    @Override
+    public SearchSettings.Ranking.Model getModel() {
+        return SearchSettings.Ranking.Model.BM25;
+    }
+
+    @Override
+    public PageScorer prepare(int siteId, List<Lemma> lemmas) {
+        DocumentStatistics.SiteDocuments site = documentStatistics.get(siteId);
+        double k1 = searchSettings.getRanking().getK1();
+        double b = searchSettings.getRanking().getB();
+        int docCount = Math.max(site.docCount(), 1);
+
+        double[] idf = new double[lemmas.size()];
+        for (int i = 0; i < idf.length; i++) {
+            int df = Math.min(lemmas.get(i).getFrequency(), docCount);
+            idf[i] = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+        }
+        double lengthNorm = b / site.avgLength();
+        double minNorm = k1 * (1 - b + lengthNorm * site.minLength());
+
+        return new PageScorer() {
+            @Override
+            public double score(int pageId, float[] ranks) {
+                return score(ranks, k1 * (1 - b + lengthNorm * site.length(pageId)));
+            }
+
+            /**
+             * Вклад леммы растёт с рангом и убывает с длиной страницы: граница - при самой короткой странице сайта
+             */
+            @Override
+            public double bound(float[] maxRanks) {
+                return score(maxRanks, minNorm);
+            }
+
+            private double score(float[] ranks, double norm) {
+                double score = 0;
+                for (int i = 0; i < ranks.length; i++) {
+                    score += idf[i] * ranks[i] * (k1 + 1) / (ranks[i] + norm);
+                }
+                return score;
+            }
+        };
+    }
+
+    /**
+     * Оценки BM25 сравнимы между сайтами, нормировать их на максимум не нужно
+     */
+    @Override
+    public boolean isNormalized() {
+        return false;
+    }
+}
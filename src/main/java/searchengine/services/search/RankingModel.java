@@ -0,0 +1,50 @@
+package searchengine.services.search;
+
+import searchengine.config.SearchSettings;
+import searchengine.model.Lemma;
+
+import java.util.List;
+
+/**
+ * Модель ранжирования страниц. Реализации - Spring-компоненты, модель выбирается
+ * настройкой search-settings.ranking.model.
+ */
+public interface RankingModel {
+
+    SearchSettings.Ranking.Model getModel();
+
+    /**
+     * Подготовка оценки страниц одного сайта: всё, что не зависит от страницы (веса лемм,
+     * статистика сайта), считается здесь один раз
+     * @param siteId - id сайта
+     * @param lemmas - леммы запроса на сайте в порядке списков вхождений
+     * @return оценка страницы
+     */
+    PageScorer prepare(int siteId, List<Lemma> lemmas);
+
+    /**
+     * Нормировать ли релевантность на максимум по всем сайтам выдачи
+     */
+    default boolean isNormalized() {
+        return true;
+    }
+
+    @FunctionalInterface
+    interface PageScorer {
+        /**
+         * @param pageId - id страницы
+         * @param ranks  - ранги лемм на странице (rank_index)
+         * @return релевантность
+         */
+        double score(int pageId, float[] ranks);
+
+        /**
+         * Верхняя граница релевантности страниц сайта, ранги лемм на которых не выше maxRanks;
+         * по ней пропускаются блоки списков вхождений. Бесконечность - блоки не пропускаются
+         * @param maxRanks - максимальные ранги лемм
+         */
+        default double bound(float[] maxRanks) {
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+}
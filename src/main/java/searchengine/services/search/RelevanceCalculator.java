@@ -1,162 +1,190 @@
 package searchengine.services.search;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
-import searchengine.model.Index;
+import searchengine.config.SearchSettings;
+import searchengine.index.InvertedIndex;
+import searchengine.index.PostingIntersection;
+import searchengine.index.PostingList;
+import searchengine.index.PostingReader;
 import searchengine.model.Lemma;
-import searchengine.model.Page;
 import searchengine.model.Search;
-import searchengine.repository.IndexRepository;
-import searchengine.repository.PageRepository;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Ранжирование страниц. Сайты ранжируются параллельно в пуле search-settings.parallel.threads:
+ * для каждого сайта списки вхождений лемм пересекаются потоково, каждое совпадение оценивается
+ * моделью ранжирования (RankingModel). Затем K лучших страниц сайтов сливаются в общий список;
+ * если модель этого требует, релевантность делится на максимальную релевантность по всем сайтам,
+ * чтобы оценки разных сайтов были сравнимы.
+ * При поиске по нескольким сайтам сайты, не успевшие за search-settings.parallel.deadline-ms, в выдачу
+ * не попадают, их ранжирование прерывается, результат отмечается как неполный (partial в ответе).
+ * Один сайт ранжируется в вызывающем потоке без срока: иначе по истечении срока выдача была бы пустой.
+ * Отбираются только K лучших страниц (K = offset + limit). Число совпадений точное, если блоки вхождений
+ * не пропускались (search-settings.block-max), иначе оно оценено и отмечается как приблизительное.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class RelevanceCalculator {
-    private final PageRepository pageRepository;
-    private final IndexRepository indexRepository;
+    private final InvertedIndex invertedIndex;
+    private final PostingReader postingReader;
+    private final SearchSettings searchSettings;
+    private final List<RankingModel> rankingModels;
+    private ExecutorService executor;
+
+    @PostConstruct
+    private void init() {
+        executor = Executors.newFixedThreadPool(Math.max(1, searchSettings.getParallel().getThreads()),
+                new ThreadFactoryBuilder().setNameFormat("search-%d").build());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
 
     /**
-     * Формирует таблицу relevance. Определяет релевантность
-     * @param lemmaList  - список лемм для поиска в Index и Page
-     * @param searchList - список результатов поиска
+     * Лучшие страницы по всем сайтам
+     * @param lemmaList - леммы по сайтам, где есть все искомые слова, по возрастанию frequency
+     * @param k         - сколько лучших страниц отобрать
+     * @return страницы по убыванию релевантности и общее число найденных страниц
      */
-    public double[][] formationForOneSite(List<Lemma> lemmaList, int offset, int limit,
-                                           List<Search> searchList) {
-        List<Search> searchListTemp = new ArrayList<>();
-        double[][] relevance;
-        double maxRelevance = 0;
-
-        // По первой, самой редкой лемме из списка, находить все страницы, на которых она встречается
-        List<Index> indexList = getIndexEForFirstLemma(lemmaList, offset, limit);
-
-        List<Page> pageList = getPageList(indexList);
-
-        relevance = getRelevanceArray(indexList, lemmaList, pageList, searchListTemp);
-
-        maxRelevance = setAbsoluteRelevance(pageList, lemmaList, relevance);
-        setRelativeRelevance(pageList, lemmaList, relevance, maxRelevance);
-
-        searchList.addAll(searchListTemp);
-        return relevance;
-    }
+    public Ranking rank(List<Lemma> lemmaList, int k) {
+        long startTime = System.currentTimeMillis();
+        RankingModel model = getRankingModel();
+        List<Integer> siteIdList = lemmaList.stream().map(Lemma::getSiteId).distinct().toList();
+        List<SiteRanking> siteRankings = new ArrayList<>(siteIdList.size());
+        boolean partial = false;
+        if (siteIdList.size() == 1) {
+            siteRankings.add(rankSite(model, siteIdList.get(0), lemmaList, k));
+        } else {
+            partial = rankSites(model, siteIdList, lemmaList, k, siteRankings);
+        }
 
-    private List<Page> getPageList(List<Index> indexList) {
-        List<Page> pageList = new ArrayList<>();
-        for (Index index : indexList) {
-            Page page = pageRepository.findByPageId(index.getPageId());
-            if (page != null) {
-                pageList.add(page);
+        double maxRelevance = siteRankings.stream().mapToDouble(SiteRanking::maxRelevance).max().orElse(0);
+        TopKCollector top = new TopKCollector(k);
+        int total = 0;
+        boolean approximate = false;
+        for (SiteRanking siteRanking : siteRankings) {
+            total += siteRanking.matches();
+            approximate |= siteRanking.approximate();
+            if (siteRanking.maxRelevance() > 0) {
+                top.offerAll(siteRanking.top(), model.isNormalized() ? maxRelevance : 1);
             }
         }
-        return pageList;
+        log.debug("Ranking: sites: {} total: {} approximate: {} k: {} partial: {} time: {} ms", siteIdList.size(),
+                total, approximate, k, partial, System.currentTimeMillis() - startTime);
+        return new Ranking(top.toSortedList(), total, approximate, partial);
     }
 
-    private List<Index> getIndexEForFirstLemma(List<Lemma> lemmaList, int offset, int limit) {
-        List<Index> indexList = new ArrayList<>(Objects
-                .requireNonNull(indexRepository.findByLemmaId(lemmaList.get(0).getLemmaId())
-                        .orElse(null)).stream().skip(offset).limit(limit).toList());
-
-        // Удаление из списка элементов, которых нет по другим леммам
-        Iterator<Index> iter = indexList.iterator();
-        while (iter.hasNext()) {
-            Index index = iter.next();
-            int pageId = index.getPageId();
-            int i = 1;
-            while (i < lemmaList.size()) {
-                Index index1 = indexRepository.findByLemmaIdAndPageId(lemmaList.get(i).getLemmaId(), pageId)
-                        .orElse(null);
-                if (index1 == null) {
-                    iter.remove();
-                    break;
-                }
-                i++;
+    /**
+     * Параллельное ранжирование сайтов со сроком search-settings.parallel.deadline-ms
+     * @param siteRankings - сюда добавляются результаты сайтов, успевших в срок
+     * @return true если не все сайты ранжированы
+     */
+    private boolean rankSites(RankingModel model, List<Integer> siteIdList, List<Lemma> lemmaList, int k,
+                              List<SiteRanking> siteRankings) {
+        long deadline = System.currentTimeMillis() + searchSettings.getParallel().getDeadlineMs();
+        List<Future<SiteRanking>> futures = new ArrayList<>(siteIdList.size());
+        for (Integer siteId : siteIdList) {
+            List<Lemma> siteLemmas = lemmaList.stream().filter(lemma -> lemma.getSiteId() == siteId).toList();
+            futures.add(executor.submit(() -> rankSite(model, siteId, siteLemmas, k)));
+        }
+        boolean partial = false;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                long timeout = Math.max(0, deadline - System.currentTimeMillis());
+                siteRankings.add(futures.get(i).get(timeout, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                futures.get(i).cancel(true);        // перебор вхождений проверяет прерывание на каждом блоке
+                partial = true;
+                log.warn("Ranking siteId: {} exceeded deadline {} ms", siteIdList.get(i),
+                        searchSettings.getParallel().getDeadlineMs());
+            } catch (ExecutionException e) {
+                partial = true;
+                log.error("Ranking siteId: {} failed", siteIdList.get(i), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(future -> future.cancel(true));
+                partial = true;
+                break;
             }
         }
-        return indexList;
+        return partial;
     }
 
-    private void setRelativeRelevance(List<Page> pageList, List<Lemma> lemmaList,
-                                      double[][] relevance, double maxRelevance) {
-        for (int j = 0; j < pageList.size(); j++) {
-            int ind = lemmaList.size() + 2;
-            relevance[j][ind] = relevance[j][ind - 1] / maxRelevance;
+    /**
+     * Лучшие страницы одного сайта по ненормированной релевантности: максимум по всем сайтам
+     * известен только после ранжирования всех сайтов, порядок внутри сайта от нормирования не меняется.
+     * Блоки вхождений, которые не могут попасть в K лучших сайта, пропускаются (search-settings.block-max):
+     * лучшая страница сайта всегда в K лучших, поэтому максимум релевантности от пропуска не меняется
+     */
+    private SiteRanking rankSite(RankingModel model, int siteId, List<Lemma> siteLemmas, int k) {
+        TopKCollector siteTop = new TopKCollector(k);
+        List<PostingList> lists = getPostings(siteId, siteLemmas);
+        if (lists.isEmpty()) {
+            return new SiteRanking(siteTop, 0, 0, false);
         }
+        RankingModel.PageScorer scorer = model.prepare(siteId, siteLemmas);
+        double[] maxRelevance = new double[1];
+        PostingIntersection.MatchConsumer consumer = (pageId, ranks) -> {
+            double relevance = scorer.score(pageId, ranks);
+            maxRelevance[0] = Double.max(maxRelevance[0], relevance);
+            siteTop.offer(siteId, pageId, relevance);
+        };
+        SearchSettings.BlockMax blockMax = searchSettings.getBlockMax();
+        PostingIntersection.Matches matches = blockMax.isEnabled() && lists.get(0).size() >= blockMax.getMinPostings()
+                ? PostingIntersection.forEachCompetitiveMatch(lists, scorer::bound, siteTop::threshold, consumer)
+                : new PostingIntersection.Matches(PostingIntersection.forEachMatch(lists, consumer), false);
+        return new SiteRanking(siteTop, maxRelevance[0], matches.count(), matches.approximate());
     }
 
-    private double setAbsoluteRelevance(List<Page> pageList, List<Lemma> lemmaList,
-                                        double[][] relevance) {
-        double maxRelevance = 0;
-        for (int j = 0; j < pageList.size(); j++) {
-            for (int k = 0; k < lemmaList.size() + 3; k++) {
-                if (k == lemmaList.size() + 1) {
-                    int sumAR = 0;
-                    for (int l = 0; l < lemmaList.size(); l++) {
-                        sumAR += relevance[j][l + 1];
-                    }
-                    relevance[j][k] = sumAR;
-                    maxRelevance = Double.max(maxRelevance, sumAR);
-                }
-            }
-        }
-        return maxRelevance;
+    private RankingModel getRankingModel() {
+        SearchSettings.Ranking.Model name = searchSettings.getRanking().getModel();
+        return rankingModels.stream()
+                .filter(model -> model.getModel() == name)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Ranking model not found: " + name));
     }
 
-    private double[][] getRelevanceArray(List<Index> indexList, List<Lemma> lemmaList,
-                                         List<Page> pageList, List<Search> searchListTemp) {
-        //          lem1 lem2
-        //      0   1    2    3    4        K -кол-во лемм
-        //  0   [1] [r1] [r2] [ar] [or]
-        //  1   [2] []   []   [ar] [or]
-        //
-        //  J -кол-во страниц (индексов)
-        // Заполняем № и колонку первой леммы
-        double[][] relevance = new double[indexList.size()][lemmaList.size() + 3];
-        for (int j = 0; j < indexList.size(); j++) {
-            for (int k = 0; k < 2; k++) {    //
-                if (k == 0) {
-                    relevance[j][k] = j + 1.0;
-                    Search search = new Search();
-                    search.setNumber(j + 1);
-                    search.setSiteId(lemmaList.get(0).getSiteId());
-                    search.setPageId(indexList.get(j).getPageId());
-                    searchListTemp.add(search);
-                    continue;
-                }
-                relevance[j][k] = indexList.get(j).getRank();
+    private List<PostingList> getPostings(int siteId, List<Lemma> siteLemmas) {
+        if (searchSettings.getEngine() == SearchSettings.Engine.MEMORY) {
+            return invertedIndex.postings(siteId, siteLemmas.stream().map(Lemma::getLemma).toList());
+        }
+        List<PostingList> lists = new ArrayList<>(siteLemmas.size());
+        for (Lemma lemma : siteLemmas) {
+            PostingList list = postingReader.read(lemma.getLemmaId());
+            if (list.size() == 0) {
+                return List.of();
             }
+            lists.add(list);
         }
-
-        // Поиск соответствия леммы из списка страниц
-        // и заполнение колонок следующих лемм
-        findingLemmaMatchFromListOfPages(lemmaList, pageList, relevance);
-
-        return relevance;
+        return lists;
     }
 
-    private void findingLemmaMatchFromListOfPages(List<Lemma> lemmaList, List<Page> pageList, double[][] relevance) {
-        int i = 1;
-        while (i < lemmaList.size()) {
-            int lemmaId = lemmaList.get(i).getLemmaId();
-            List<Index> indexList2 = new ArrayList<>(
-                    Objects.requireNonNull(indexRepository.findByLemmaId(lemmaId).orElse(null)));
+    /**
+     * Результат ранжирования
+     * @param pages       - лучшие страницы по убыванию релевантности
+     * @param total       - всего найдено страниц
+     * @param approximate - total оценён: у одного из сайтов пропускались блоки вхождений
+     * @param partial     - не все сайты ранжированы (истёк срок или ошибка), результат не кэшируется
+     */
+    public record Ranking(List<Search> pages, int total, boolean approximate, boolean partial) {
+    }
 
-            if (!pageList.removeIf(page -> indexList2.stream()
-                    .noneMatch(indexE -> indexE.getPageId() == page.getPageId()))) {
-                // удаляем лишние индексы
-                indexList2.removeIf(indexE -> pageList.stream()
-                        .noneMatch(page -> page.getPageId() == indexE.getPageId()));
-                for (int j = 0; j < indexList2.size(); j++) {
-                    relevance[j][i + 1] = indexList2.get(j).getRank();
-                }
-            }
-            i++;
-        }
+    private record SiteRanking(TopKCollector top, double maxRelevance, int matches, boolean approximate) {
     }
 }
@@ -0,0 +1,53 @@
+package searchengine.services.search;
+
+import searchengine.index.SearchReader;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Загрузчик страниц выдачи на время одного поискового запроса: id страниц сначала регистрируются,
+ * при первом обращении к любой из них все зарегистрированные и ещё не прочитанные страницы
+ * читаются одним запросом IN (...). Если все сниппеты взяты из кэша, к БД обращений нет.
+ */
+class SearchBatchLoader {
+    private final SearchReader searchReader;
+    private final Set<Integer> pending = new LinkedHashSet<>();
+    private final Map<Integer, SearchReader.PageHeader> pages = new HashMap<>();
+
+    SearchBatchLoader(SearchReader searchReader) {
+        this.searchReader = searchReader;
+    }
+
+    /**
+     * Регистрирует страницы, которые могут понадобиться
+     * @param pageIds - id страниц
+     */
+    void register(Collection<Integer> pageIds) {
+        for (Integer pageId : pageIds) {
+            if (!pages.containsKey(pageId)) {
+                pending.add(pageId);
+            }
+        }
+    }
+
+    /**
+     * Страница выдачи; незарегистрированная страница читается вместе с зарегистрированными
+     * @param pageId - id страницы
+     * @return страница, null если её нет в БД
+     */
+    SearchReader.PageHeader getPage(int pageId) {
+        if (!pages.containsKey(pageId)) {
+            pending.add(pageId);
+            Map<Integer, SearchReader.PageHeader> loaded = searchReader.findPages(pending);
+            for (Integer id : pending) {
+                pages.put(id, loaded.get(id));          // null - страница удалена
+            }
+            pending.clear();
+        }
+        return pages.get(pageId);
+    }
+}
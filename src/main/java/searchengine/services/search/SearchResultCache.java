@@ -0,0 +1,198 @@
+package searchengine.services.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.statistics.CacheStatistics;
+import searchengine.index.IndexGeneration;
+import searchengine.model.Search;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш результатов поиска. Для запроса хранятся K лучших страниц и общее число найденных, поэтому
+ * следующие страницы выдачи (другой offset) - это срез готового списка; если его не хватает,
+ * список пересчитывается с большим K.
+ * Сниппеты кэшируются отдельно и только для страниц, которые действительно были показаны.
+ * Запись устаревает, если с момента расчёта изменилось поколение индекса (IndexGeneration)
+ * хотя бы одного из сайтов запроса.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SearchResultCache {
+    private final SearchSettings searchSettings;
+    private final IndexGeneration indexGeneration;
+
+    private final AtomicLong staleHits = new AtomicLong();
+    private Cache<Key, RankedResult> results;
+    private Cache<SnippetKey, SnippetEntry> snippets;
+
+    @PostConstruct
+    private void init() {
+        SearchSettings.Cache settings = searchSettings.getCache();
+        results = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, settings.getMaxQueries()))
+                .recordStats()
+                .build();
+        snippets = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, settings.getMaxSnippets()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Поколения индексов сайтов запроса. Берутся до расчёта результата и передаются в put()
+     * @param key - ключ запроса
+     */
+    public long[] generations(Key key) {
+        return indexGeneration.snapshot(key.siteIds());
+    }
+
+    /**
+     * Ранжированный список страниц запроса
+     * @param key - ключ запроса
+     * @return null если записи нет или индекс одного из сайтов изменился
+     */
+    public RankedResult get(Key key) {
+        if (!searchSettings.getCache().isEnabled()) {
+            return null;
+        }
+        RankedResult result = results.getIfPresent(key);
+        if (result != null && !Arrays.equals(result.generations(), generations(key))) {
+            results.invalidate(key);
+            staleHits.incrementAndGet();
+            log.debug("Search cache: stale entry {}", key);
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Сохраняет ранжированный список страниц запроса
+     * @param key         - ключ запроса
+     * @param generations - поколения индексов, взятые до расчёта
+     * @param lemmas      - леммы, по которым строятся сниппеты
+     * @param ranking     - лучшие страницы и общее число найденных
+     */
+    public RankedResult put(Key key, long[] generations, List<String> lemmas, RelevanceCalculator.Ranking ranking) {
+        List<RankedPage> pages = new ArrayList<>(ranking.pages().size());
+        for (Search search : ranking.pages()) {
+            pages.add(new RankedPage(search.getSiteId(), search.getPageId(), search.getRelevance()));
+        }
+        RankedResult result = new RankedResult(generations, lemmas, List.copyOf(pages), ranking.total(),
+                ranking.approximate(), ranking.partial());
+        if (searchSettings.getCache().isEnabled() && !ranking.partial()) {
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Сниппет страницы для набора лемм, при отсутствии в кэше строится через loader
+     * @param siteId - id сайта
+     * @param pageId - id страницы
+     * @param lemmas - леммы запроса
+     * @param loader - построение сниппета, может вернуть null
+     */
+    public PageSnippet getSnippet(int siteId, int pageId, List<String> lemmas, Supplier<PageSnippet> loader) {
+        if (!searchSettings.getCache().isEnabled()) {
+            return loader.get();
+        }
+        SnippetKey key = new SnippetKey(pageId, lemmas);
+        long generation = indexGeneration.get(siteId);
+        SnippetEntry entry = snippets.getIfPresent(key);
+        if (entry != null && entry.generation() == generation) {
+            return entry.snippet();
+        }
+        PageSnippet snippet = loader.get();
+        if (snippet != null) {
+            snippets.put(key, new SnippetEntry(generation, snippet));
+        }
+        return snippet;
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = results.stats();
+        CacheStats snippetStats = snippets.stats();
+        long stale = staleHits.get();
+        long hits = stats.hitCount() - stale;
+        long misses = stats.missCount() + stale;
+
+        CacheStatistics statistics = new CacheStatistics();
+        statistics.setSize(results.size());
+        statistics.setHits(hits);
+        statistics.setMisses(misses);
+        statistics.setEvictions(stats.evictionCount() + snippetStats.evictionCount());
+        statistics.setHitRate(hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        statistics.setSnippetHits(snippetStats.hitCount());
+        statistics.setSnippetMisses(snippetStats.missCount());
+        return statistics;
+    }
+
+    /**
+     * Ключ запроса: отсортированные леммы запроса и id сайтов, по которым идёт поиск
+     */
+    public record Key(List<String> lemmas, List<Integer> siteIds) {
+    }
+
+    public record RankedPage(int siteId, int pageId, double relevance) {
+    }
+
+    /**
+     * Результат запроса: лучшие страницы по убыванию релевантности и общее число найденных;
+     * approximate - общее число оценено, partial - не все сайты ранжированы, такой результат в кэш не попадает
+     */
+    public record RankedResult(long[] generations, List<String> lemmas, List<RankedPage> pages, int total,
+                               boolean approximate, boolean partial) {
+
+        /**
+         * Хватает ли отобранных страниц для выдачи до end. Оценённому числу найденных страниц не доверяем:
+         * если отобранных страниц меньше end, список пересчитывается с большим K - при K больше числа
+         * совпадений блоки не пропускаются и число становится точным
+         * @param end - offset + limit
+         */
+        public boolean covers(long end) {
+            return pages.size() >= (approximate ? end : Math.min(end, total));
+        }
+
+        /**
+         * Страница выдачи
+         * @param offset - сдвиг от 0
+         * @param limit  - количество результатов
+         */
+        public List<Search> slice(int offset, int limit) {
+            int from = Math.min(Math.max(offset, 0), pages.size());
+            int to = (int) Math.min((long) from + Math.max(limit, 0), pages.size());
+            List<Search> searchList = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                RankedPage page = pages.get(i);
+                Search search = new Search();
+                search.setNumber(i + 1);
+                search.setSiteId(page.siteId());
+                search.setPageId(page.pageId());
+                search.setRelevance(page.relevance());
+                searchList.add(search);
+            }
+            return searchList;
+        }
+    }
+
+    public record PageSnippet(String title, String url, String snippet) {
+    }
+
+    private record SnippetKey(int pageId, List<String> lemmas) {
+    }
+
+    private record SnippetEntry(long generation, PageSnippet snippet) {
+    }
+}
@@ -4,16 +4,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import searchengine.config.SearchSettings;
 import searchengine.config.SiteList;
 import searchengine.dto.Response;
 import searchengine.dto.search.SearchData;
 import searchengine.dto.search.SearchResponse;
 import searchengine.lemma.LemmaFinder;
 import searchengine.model.*;
-import searchengine.repository.IndexRepository;
-import searchengine.repository.LemmaRepository;
-import searchengine.repository.PageRepository;
-import searchengine.repository.SiteRepository;
+import searchengine.index.SearchReader;
+import searchengine.index.SiteDirectory;
 
 import java.util.*;
 
@@ -22,14 +21,15 @@ import java.util.*;
 @RequiredArgsConstructor
 public class SearchServiceImpl implements SearchService {
 
-    private final LemmaRepository lemmaRepository;
-    private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
+    private final SearchReader searchReader;
+    private final SiteDirectory siteDirectory;
     private final RelevanceCalculator relevanceCalculator;
     private final SnippetFormatter snippetFormatter;
+    private final SearchSettings searchSettings;
+    private final SearchResultCache searchResultCache;
 
     private final SiteList sites;
-    private final LemmaFinder lemmaFinder = LemmaFinder.getInstance();
+    private final LemmaFinder lemmaFinder;
 
     /**
      * Метод осуществляет поиск страниц по переданному поисковому запросу (параметр query).
@@ -46,31 +46,50 @@ public class SearchServiceImpl implements SearchService {
     @Override
     public Response search(String query, String site, int offset, int limit) {
 
-        List<Search> searchList = new ArrayList<>();
         /* 1. Вывод параметров поискового запроса */
         printInfoBySearch(query, site, offset, limit);
 
-        /* 2. Подготовка данных */
-        List<Integer> siteIdList = new ArrayList<>();
-        List<String> lemmaListFromQuery = new ArrayList<>();
-        List<Lemma> lemmaList = new ArrayList<>();
-        Response response = prepareDataForSearch(query, site, siteIdList, lemmaListFromQuery,
-                lemmaList);
-        if (response != null) {
-            return response;
+        /* 2. Ключ кэша: сайты и леммы запроса */
+        List<Integer> siteIdList = getSiteIdList(site);
+        if (siteIdList.isEmpty()) {
+            return setResponseFalse("search site " + site + " not found");
         }
+        List<String> lemmaListFromQuery = lemmaFinder
+                .collectLemmas(query)
+                .keySet()
+                .stream().sorted().toList();
+        SearchResultCache.Key key = new SearchResultCache.Key(lemmaListFromQuery, siteIdList);
+
+        /* 3. Лучшие offset + limit страниц из кэша, иначе ранжирование */
+        long end = (long) Math.max(offset, 0) + Math.max(limit, 0);
+        SearchResultCache.RankedResult ranked = searchResultCache.get(key);
+        if (ranked == null || !ranked.covers(end)) {
+            long[] generations = searchResultCache.generations(key);
+            List<Lemma> lemmaList = new ArrayList<>();
+            Response response = prepareDataForSearch(siteIdList, lemmaListFromQuery, lemmaList);
+            if (response != null) {
+                return response;
+            }
 
-        /* 3. Заполнение и сортировка searchResultsList */
-        fillSearchResultsList(siteIdList, lemmaList, offset, limit, searchList);
-        if (searchList.isEmpty()) {
-            return setResponseFalse("Не найдено");
+            int k = (int) Math.min(Integer.MAX_VALUE, Math.max(end, searchSettings.getMinTopK()));
+            RelevanceCalculator.Ranking ranking = relevanceCalculator.rank(lemmaList, k);
+            if (ranking.total() == 0) {
+                return setResponseFalse("Не найдено");
+            }
+            ranked = searchResultCache.put(key, generations,
+                    lemmaList.stream().map(Lemma::getLemma).distinct().toList(), ranking);
+        } else {
+            log.info("Результат взят из кэша, найдено страниц: {}", ranked.total());
         }
-        sortSearchResultsList(offset, limit, searchList);
 
-        /* 4. Довавление сниппетов */
-        setSnippetForSearchResults(lemmaList, searchList);
+        /* 4. Страница выдачи и сниппеты */
+        List<Search> searchList = ranked.slice(offset, limit);
+        setSnippetForSearchResults(ranked.lemmas(), searchList);
 
-        return setSearchData(searchList);
+        SearchResponse response = setSearchData(searchList, ranked.total());
+        response.setApproximateCount(ranked.approximate());
+        response.setPartial(ranked.partial());
+        return response;
     }
 
     private void printInfoBySearch(String query, String site, int offset, int limit) {
@@ -85,43 +104,28 @@ public class SearchServiceImpl implements SearchService {
 
     /**
      * Подготовка данных для поиска
-     * @param query              — поисковый запрос;
-     * @param site               — сайт (null если все)
-     * @param siteIdList         - список Id сайтов, где есть искомые слова
+     * @param siteIdList         - список Id сайтов поиска
      * @param lemmaListFromQuery - список слов(лемм) поисковых
      * @param lemmaList          - список найденных сущностей Lemma из БД
      * @return Response - null если всё в порядке
      */
     private Response prepareDataForSearch(
-            String query, String site,
             List<Integer> siteIdList, List<String> lemmaListFromQuery, List<Lemma> lemmaList) {
 
-        List<Integer> siteIdListTemp = getSiteIdList(site);
-        if (siteIdListTemp.isEmpty()) {
-            return setResponseFalse("search site " + site + " not found");
-        }
-
-        List<String> lemmaListFromQueryTemp = Objects.requireNonNull(lemmaFinder)
-                .collectLemmas(query)
-                .keySet()
-                .stream().toList();
-
-        List<Lemma> lemmaListTemp = getLemmaList(siteIdListTemp, lemmaListFromQueryTemp);
+        List<Lemma> lemmaListTemp = getLemmaList(siteIdList, lemmaListFromQuery);
         if (lemmaListTemp.isEmpty()) {
             return setResponseFalse("search lemmas: not found in database");
         }
 
-        removeIfLimitFrequencyIsBig(lemmaListTemp);
-        if (lemmaListTemp.isEmpty()) {
-            return setResponseFalse("not found lemmas");
+        if (searchSettings.isDropFrequentLemmas()) {
+            removeIfLimitFrequencyIsBig(lemmaListTemp);
+            if (lemmaListTemp.isEmpty()) {
+                return setResponseFalse("not found lemmas");
+            }
         }
 
-        siteIdListTemp = lemmaListTemp.stream().map(Lemma::getSiteId).distinct().toList();
-
         lemmaListTemp = lemmaListTemp.stream().sorted(Comparator.comparingInt(Lemma::getFrequency)).toList();
 
-        siteIdList.addAll(siteIdListTemp);
-        lemmaListFromQuery.addAll(lemmaListFromQueryTemp);
         lemmaList.addAll(lemmaListTemp);
 
         return null;
@@ -133,53 +137,27 @@ public class SearchServiceImpl implements SearchService {
      * @return list of siteIds
      */
     private List<Integer> getSiteIdList(String site) {
-        List<Integer> siteIdList = new ArrayList<>();
-        if (site == null) {
-            List<searchengine.config.Site> siteList = sites.getSites();
-            siteIdList = siteList.stream()
-                    .map(searchengine.config.Site::getName)
-                    .map(s -> {
-                        if (siteRepository.existsByName(s)) {
-                            return siteRepository.findSiteEByName(s).get(0).getSiteId();
-                        } else {
-                            return 0;
-                        }
-                    }).toList();
-        } else {
-            Optional<searchengine.config.Site> siteFromConfig = sites.getSites().stream()
-                    .filter(site1 -> site1.getUrl().equals(site)).findFirst();
-            if (siteFromConfig.isPresent()) {
-                Site siteE = siteRepository.findByName(siteFromConfig.get().getName())
-                        .orElse(null);
-                if (siteE != null) {
-                    siteIdList.add(siteE.getSiteId());
-                }
-            }
+        List<String> names = sites.getSites().stream()
+                .filter(siteFromConfig -> site == null || siteFromConfig.getUrl().equals(site))
+                .map(searchengine.config.Site::getName)
+                .toList();
+        if (site != null && names.size() > 1) {
+            names = names.subList(0, 1);
         }
-        return siteIdList.stream().filter(integer -> integer != 0).toList();
+        return siteDirectory.getSiteIds(names);
     }
 
     /**
-     * Возвращает список сущностей Lemma из DB если количество лемм совпадает
+     * Возвращает леммы из БД по сайтам, на которых найдены все леммы запроса
      * @param siteIdList         список siteId
      * @param lemmaListFromQuery список лемм из запроса
      * @return список найденных в БД лемм
      */
     private List<Lemma> getLemmaList(List<Integer> siteIdList, List<String> lemmaListFromQuery) {
-        List<Lemma> lemmaList = new ArrayList<>();
-        for (Integer siteId : siteIdList) {
-            for (String lem : lemmaListFromQuery) {
-                lemmaRepository.findBySiteIdAndLemma(siteId, lem).ifPresent(lemmaList::add);
-            }
-            long countOfWordsFound = lemmaList.stream()
-                    .filter(lemma -> siteId.equals(lemma.getSiteId())).count();
-            if (countOfWordsFound == 0) {
-                continue;
-            }
-            if (countOfWordsFound != lemmaListFromQuery.size()) {
-                lemmaList.removeIf(lemma -> lemma.getSiteId() == siteId);
-            }
-        }
+        List<Lemma> lemmaList = searchReader.findLemmas(siteIdList, lemmaListFromQuery);
+        Map<Integer, Long> countOfWordsFound = new HashMap<>();
+        lemmaList.forEach(lemma -> countOfWordsFound.merge(lemma.getSiteId(), 1L, Long::sum));
+        lemmaList.removeIf(lemma -> countOfWordsFound.get(lemma.getSiteId()) != lemmaListFromQuery.size());
         return lemmaList;
     }
 
@@ -189,10 +167,12 @@ public class SearchServiceImpl implements SearchService {
      */
     private void removeIfLimitFrequencyIsBig(List<Lemma> lemmaList) {
         int limitCount = 1000;
+        Map<Integer, Integer> pageCounts = siteDirectory.getPageCounts(
+                lemmaList.stream().map(Lemma::getSiteId).distinct().toList());
         Iterator<Lemma> iterator = lemmaList.iterator();
         while (iterator.hasNext()) {
             Lemma lemma = iterator.next();
-            int countPages = pageRepository.countBySiteId(lemma.getSiteId());
+            int countPages = pageCounts.getOrDefault(lemma.getSiteId(), 0);
 
             log.debug("siteId: {} countPages: {} Frequency: {}", lemma.getSiteId(), countPages,
                     lemma.getFrequency());
@@ -204,98 +184,66 @@ public class SearchServiceImpl implements SearchService {
     }
 
     /**
-     * Заполнение списка SearchResults
-     * @param siteIdList        список siteId
+     * Заполнение сниппетами списка SearchResults. Сниппет строится только при первом показе страницы
+     * по этому набору лемм, дальше берётся из кэша; страницы без сниппета в кэше читаются одним запросом
      * @param lemmaList         список лемм
      * @param searchList список
      */
-    private void fillSearchResultsList(List<Integer> siteIdList,
-                                       List<Lemma> lemmaList, int offset, int limit, List<Search> searchList) {
-        double[][] relevance;
-
-        List<Search> searchListTemp = new ArrayList<>();
-        for (Integer i : siteIdList) {
-            relevance = relevanceCalculator.formationForOneSite(
-                    lemmaList.stream().filter(lemma -> lemma.getSiteId() == i).toList(), offset, limit,
-                    searchListTemp);
-
-            // заполняем searchResultsList
-            for (int j = 0; j < relevance.length; j++) {
-                Search results;
-                for (Search search : searchListTemp) {
-                    results = search;
-                    int ind = relevance[j].length - 1;
-                    if (results.getNumber() == (j + 1) && results.getSiteId() == i) {
-                        results.setRelevance(relevance[j][ind]);
-                    }
-                }
-            }
-        }
-        searchList.addAll(searchListTemp);
-    }
-
-    /**
-     * Сортировка списка SearchResults и после применение offset и limit
-     */
-    private void sortSearchResultsList(int offset, int limit,
-                                       List<Search> searchList) {
-        List<Search> searchListTemp;
-
-        searchListTemp = searchList.stream()
-                .filter(search -> search.getRelevance() != 0.0)
-                .sorted(Comparator
-                        .comparing(Search::getRelevance)
-                        .reversed())
-                .skip(offset)
-                .limit(limit)
-                .toList();
-
-        searchList.clear();
-        searchList.addAll(searchListTemp);
-    }
-
-    /**
-     * Заполнение сниппетами списка SearchResults
-     * @param lemmaList         список лемм
-     * @param searchList список
-     */
-    private void setSnippetForSearchResults(List<Lemma> lemmaList,
+    private void setSnippetForSearchResults(List<String> lemmaList,
                                             List<Search> searchList) {
+        SearchBatchLoader loader = new SearchBatchLoader(searchReader);
+        loader.register(searchList.stream().map(Search::getPageId).toList());
         Iterator<Search> iteratorSR = searchList.iterator();
         Search results;
         while (iteratorSR.hasNext()) {
             results = iteratorSR.next();
-            Page page = pageRepository.findByPageId(results.getPageId());
-            results.setTitle(page.getTitle());
-            results.setUrl(page.getPath());
-
-            String snippet = snippetFormatter.getSnippet(page.getContent(), lemmaList);
-            results.setSnippet(snippet);
+            int pageId = results.getPageId();
+            SearchResultCache.PageSnippet snippet = searchResultCache.getSnippet(results.getSiteId(), pageId,
+                    lemmaList, () -> {
+                        SearchReader.PageHeader page = loader.getPage(pageId);
+                        return page == null ? null : new SearchResultCache.PageSnippet(page.title(),
+                                page.path(), snippetFormatter.getSnippet(pageId, lemmaList));
+                    });
+            if (snippet == null) {
+                log.warn("pageId: {} not found", pageId);
+                iteratorSR.remove();
+                continue;
+            }
+            results.setTitle(snippet.title());
+            results.setUrl(snippet.url());
+            results.setSnippet(snippet.snippet());
         }
     }
 
     /**
      * SearchResults -> searchDataList
+     * @param count - всего найдено страниц
      * @return responseTrue
      */
-    private Response setSearchData(List<Search> searchList) {
+    private SearchResponse setSearchData(List<Search> searchList, int count) {
         List<SearchData> searchDataList = new ArrayList<>();
         SearchResponse responseTrue = new SearchResponse();
         responseTrue.setError("");
         responseTrue.setResult(true);
-        responseTrue.setCount(searchList.size());
+        responseTrue.setCount(count);
+        Map<Integer, SearchReader.SiteHeader> sitesById = siteDirectory.getSites(
+                searchList.stream().map(Search::getSiteId).distinct().toList());
         for (Search search : searchList) {
-            Site site = siteRepository.getSiteEBySiteId(search.getSiteId());
+            SearchReader.SiteHeader site = sitesById.get(search.getSiteId());
+            if (site == null) {
+                log.warn("siteId: {} not found", search.getSiteId());
+                continue;
+            }
             String uri = search.getUrl().endsWith("/") ? search.getUrl()
                     .substring(0, search.getUrl().length() - 1) : search.getUrl();
-            SearchData searchData = new SearchData(site.getUrl(),
-                    site.getName(),
+            SearchData searchData = new SearchData(site.url(),
+                    site.name(),
                     uri,
                     search.getTitle(),
                     search.getSnippet(),
                     search.getRelevance());
             searchDataList.add(searchData);
-            log.info("сайт {} релевантность {}", site.getUrl() + uri, searchData.getRelevance());
+            log.info("сайт {} релевантность {}", site.url() + uri, searchData.getRelevance());
         }
         System.out.println();
         responseTrue.setData(searchDataList);
@@ -1,10 +1,14 @@
 package searchengine.services.search;
 
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import searchengine.index.PostingReader;
 import searchengine.lemma.LemmaFinder;
-import searchengine.model.Lemma;
+import searchengine.lemma.LemmaOccurrences;
+import searchengine.lemma.Tokenizer;
+import searchengine.repository.PageContentStore;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -12,8 +16,134 @@ import java.util.stream.IntStream;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class SnippetFormatter {
-    private final LemmaFinder lemmaFinder = LemmaFinder.getInstance();
+    private static final int SNIPPET_LENGTH = 260;      // длина фрагмента в символах
+    private static final int WINDOW_WORDS = 30;        // окно поиска лучшего фрагмента в словах
+
+    private final PostingReader postingReader;
+    private final PageContentStore pageContentStore;
+    private final LemmaFinder lemmaFinder;
+
+    /**
+     * Получение сниппета страницы. Если при индексации сохранены позиции лемм, фрагмент
+     * находится по ним без лемматизации текста, иначе - через getSnippet(content, lemmaList).
+     * Текст страницы читается из PageContentStore только здесь, для страниц выдачи
+     * @param pageId    id страницы
+     * @param lemmaList список лемм для поиска
+     * @return сниппет
+     */
+    public String getSnippet(int pageId, List<String> lemmaList) {
+        String content = pageContentStore.load(pageId);
+        Map<String, LemmaOccurrences> occurrences = postingReader.readPositions(pageId, lemmaList);
+        if (occurrences.size() < lemmaList.size()) {
+            return getSnippet(content, lemmaList);
+        }
+        return getSnippetByPositions(content, lemmaList.stream().map(occurrences::get).toList());
+    }
+
+    /**
+     * Сниппет по позициям лемм: все вхождения сливаются в порядке текста, окном в WINDOW_WORDS слов
+     * ищется фрагмент, где встречается больше всего разных лемм запроса, затем - больше всего вхождений
+     * @param content     текст страницы
+     * @param occurrences вхождения каждой леммы запроса
+     * @return сниппет
+     */
+    private String getSnippetByPositions(String content, List<LemmaOccurrences> occurrences) {
+        int lemmas = occurrences.size();
+        int total = occurrences.stream().mapToInt(LemmaOccurrences::count).sum();
+        if (total == 0) {
+            return "";
+        }
+
+        // слияние вхождений всех лемм по номеру слова
+        int[] positions = new int[total];
+        int[] offsets = new int[total];
+        int[] owners = new int[total];
+        int[] cursors = new int[lemmas];
+        for (int n = 0; n < total; n++) {
+            int next = -1;
+            for (int l = 0; l < lemmas; l++) {
+                if (cursors[l] < occurrences.get(l).count() && (next < 0
+                        || occurrences.get(l).position(cursors[l]) < occurrences.get(next).position(cursors[next]))) {
+                    next = l;
+                }
+            }
+            LemmaOccurrences lemma = occurrences.get(next);
+            positions[n] = lemma.position(cursors[next]);
+            offsets[n] = lemma.offset(cursors[next]);
+            owners[n] = next;
+            cursors[next]++;
+        }
+
+        // лучшее окно
+        int[] inWindow = new int[lemmas];
+        int distinct = 0;
+        int bestLeft = 0;
+        int bestRight = 0;
+        int bestDistinct = 0;
+        int bestHits = 0;
+        int left = 0;
+        for (int right = 0; right < total; right++) {
+            if (inWindow[owners[right]]++ == 0) {
+                distinct++;
+            }
+            while (positions[right] - positions[left] >= WINDOW_WORDS) {
+                if (--inWindow[owners[left]] == 0) {
+                    distinct--;
+                }
+                left++;
+            }
+            int hits = right - left + 1;
+            if (distinct > bestDistinct || (distinct == bestDistinct && hits > bestHits)) {
+                bestDistinct = distinct;
+                bestHits = hits;
+                bestLeft = left;
+                bestRight = right;
+            }
+        }
+
+        // границы фрагмента по границам слов
+        int start = offsets[bestLeft];
+        int firstWordEnd = wordEnd(content, start);
+        int end = wordEnd(content, offsets[bestRight]);
+        int pad = Math.max(0, (SNIPPET_LENGTH - (end - start)) / 2);
+        int begin = Math.max(0, start - pad);
+        int finish = Math.min(content.length(), Math.max(end + pad, firstWordEnd));
+        finish = Math.min(finish, Math.max(begin + SNIPPET_LENGTH, firstWordEnd));
+        while (begin > 0 && begin < start && !Character.isWhitespace(content.charAt(begin - 1))) {
+            begin++;
+        }
+        while (finish < content.length() && finish > firstWordEnd && !Character.isWhitespace(content.charAt(finish))) {
+            finish--;
+        }
+
+        // выделение вхождений жирным
+        StringBuilder snippet = new StringBuilder("<... ");
+        int pos = begin;
+        for (int n = 0; n < total; n++) {
+            int offset = offsets[n];
+            if (offset < begin) {
+                continue;
+            }
+            if (offset >= finish) {
+                break;
+            }
+            int wordEnd = Math.min(wordEnd(content, offset), finish);
+            snippet.append(content, pos, offset).append("<b>").append(content, offset, wordEnd).append("</b>");
+            pos = wordEnd;
+        }
+        snippet.append(content, pos, finish).append(" ...>");
+        return snippet.toString();
+    }
+
+    private static int wordEnd(String content, int offset) {
+        int end = offset;
+        while (end < content.length() && Tokenizer.isWordChar(Character.toLowerCase(content.charAt(end)))) {
+            end++;
+        }
+        return end;
+    }
 
     /**
      * Получение сниппета из контекста страницы
@@ -21,17 +151,17 @@ public class SnippetFormatter {
      * @param lemmaList список лемм для поиска
      * @return сниппет
      */
-    public String getSnippet(String content, List<Lemma> lemmaList) {
+    public String getSnippet(String content, List<String> lemmaList) {
         long startTime = System.currentTimeMillis();
 
         List<String> splitContent = Arrays.stream(content.trim().split("\\s+")).toList();
         String[] arraySplitContent = splitContent.toArray(String[]::new);
 
         Map<String, List<Integer>> listPosition = new HashMap<>();
-        for (Lemma lemma : lemmaList) {
+        for (String lemma : lemmaList) {
             List<Integer> listIndexByLemmaFromContent = getListIndexByLemmaFromContent(
-                    arraySplitContent, lemma.getLemma());
-            listPosition.put(lemma.getLemma(), listIndexByLemmaFromContent);
+                    arraySplitContent, lemma);
+            listPosition.put(lemma, listIndexByLemmaFromContent);
         }
 
         Map<String, Integer> mapFoundWords = new HashMap<>();
@@ -75,7 +205,7 @@ public class SnippetFormatter {
                     if (w.endsWith(".com")) {
                         w = w.replace(".com", "");
                     }
-                    List<String> lemmaListFromQuery = Objects.requireNonNull(lemmaFinder)
+                    List<String> lemmaListFromQuery = lemmaFinder
                             .collectLemmas(w)
                             .keySet()
                             .stream()
@@ -101,10 +231,10 @@ public class SnippetFormatter {
      * @return mapFoundWords    < лемма, индекс >
      */
     private Map<String, Integer> setMapFoundWords(Map<String, List<Integer>> listPosition,
-                                                  List<Lemma> lemmaList) {
+                                                  List<String> lemmaList) {
         Map<String, Integer> mapFoundWords = new HashMap<>();
-        for (Lemma lemma : lemmaList) {
-            mapFoundWords.put(lemma.getLemma(), 0);
+        for (String lemma : lemmaList) {
+            mapFoundWords.put(lemma, 0);
         }
 
         AtomicInteger prev = new AtomicInteger(0);
@@ -119,7 +249,7 @@ public class SnippetFormatter {
             }
         });
         if (prev.get() == 0) {
-            prev.set(listPosition.get(lemmaList.get(0).getLemma()).get(0));
+            prev.set(listPosition.get(lemmaList.get(0)).get(0));
         }
 
         mapFoundWords.forEach((k, v) -> {
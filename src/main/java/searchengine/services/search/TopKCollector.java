@@ -0,0 +1,165 @@
+package searchengine.services.search;
+
+import searchengine.model.Search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * K лучших страниц по релевантности: min-куча фиксированного размера в примитивных массивах,
+ * в корне - худшая из отобранных страниц. Каждая новая страница сравнивается с корнем,
+ * всего O(n log K) на n страниц и O(K) памяти.
+ * При равной релевантности выше страница с меньшими siteId и pageId, чтобы выдача была стабильной.
+ */
+class TopKCollector {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int k;
+    private int[] siteIds;
+    private int[] pageIds;
+    private double[] scores;
+    private int size;
+
+    TopKCollector(int k) {
+        this.k = Math.max(0, k);
+        int capacity = Math.min(this.k, INITIAL_CAPACITY);
+        siteIds = new int[capacity];
+        pageIds = new int[capacity];
+        scores = new double[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Порог отбора: страница с релевантностью ниже него в K лучших не попадёт
+     * @return релевантность худшей отобранной страницы, минус бесконечность пока отобрано меньше K
+     */
+    double threshold() {
+        if (k == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return size < k ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Предлагает страницу
+     * @param siteId - id сайта
+     * @param pageId - id страницы
+     * @param score  - релевантность
+     */
+    void offer(int siteId, int pageId, double score) {
+        if (size < k) {
+            if (size == scores.length) {
+                grow();
+            }
+            set(size, siteId, pageId, score);
+            siftUp(size++);
+        } else if (k > 0 && isWorse(0, siteId, pageId, score)) {
+            set(0, siteId, pageId, score);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Предлагает страницы другого сборщика, их релевантность делится на divisor
+     * @param other   - сборщик
+     * @param divisor - делитель релевантности
+     */
+    void offerAll(TopKCollector other, double divisor) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.siteIds[i], other.pageIds[i], other.scores[i] / divisor);
+        }
+    }
+
+    /**
+     * Отобранные страницы по убыванию релевантности
+     */
+    List<Search> toSortedList() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> isWorse(a, siteIds[b], pageIds[b], scores[b]) ? 1
+                : isWorse(b, siteIds[a], pageIds[a], scores[a]) ? -1 : 0);
+
+        List<Search> searchList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int j = order[i];
+            Search search = new Search();
+            search.setNumber(i + 1);
+            search.setSiteId(siteIds[j]);
+            search.setPageId(pageIds[j]);
+            search.setRelevance(scores[j]);
+            searchList.add(search);
+        }
+        return searchList;
+    }
+
+    /**
+     * Элемент i кучи хуже страницы (siteId, pageId, score)
+     */
+    private boolean isWorse(int i, int siteId, int pageId, double score) {
+        int cmp = Double.compare(scores[i], score);
+        if (cmp != 0) {
+            return cmp < 0;
+        }
+        if (siteIds[i] != siteId) {
+            return siteIds[i] > siteId;
+        }
+        return pageIds[i] > pageId;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isWorse(i, siteIds[parent], pageIds[parent], scores[parent])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < size && isWorse(right, siteIds[left], pageIds[left], scores[left])) {
+                worst = right;
+            }
+            if (!isWorse(worst, siteIds[i], pageIds[i], scores[i])) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void set(int i, int siteId, int pageId, double score) {
+        siteIds[i] = siteId;
+        pageIds[i] = pageId;
+        scores[i] = score;
+    }
+
+    private void swap(int a, int b) {
+        int siteId = siteIds[a];
+        int pageId = pageIds[a];
+        double score = scores[a];
+        set(a, siteIds[b], pageIds[b], scores[b]);
+        set(b, siteId, pageId, score);
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min((long) k, Math.max(1L, scores.length * 2L));
+        siteIds = Arrays.copyOf(siteIds, capacity);
+        pageIds = Arrays.copyOf(pageIds, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+    }
+}
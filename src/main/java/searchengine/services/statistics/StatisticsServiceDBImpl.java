@@ -6,14 +6,18 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import searchengine.config.SiteList;
 import searchengine.dto.statistics.DetailedStatisticsItem;
+import searchengine.dto.statistics.MorphologyStatistics;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
+import searchengine.lemma.MorphologyService;
+import searchengine.lemma.NormalFormCache;
 import searchengine.model.Site;
 import searchengine.model.Status;
 import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
+import searchengine.services.search.SearchResultCache;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -28,6 +32,9 @@ public class StatisticsServiceDBImpl implements StatisticsService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaTRepository;
+    private final SearchResultCache searchResultCache;
+    private final MorphologyService morphologyService;
+    private final NormalFormCache normalFormCache;
 
     @Override
     public StatisticsResponse getStatistics() {
@@ -56,6 +63,8 @@ public class StatisticsServiceDBImpl implements StatisticsService {
         }
         data.setTotal(total);
         data.setDetailed(detailed);
+        data.setCache(searchResultCache.getStatistics());
+        data.setMorphology(getMorphologyStatistics());
         response.setStatistics(data);
         response.setResult(true);
         return response;
@@ -77,6 +86,21 @@ public class StatisticsServiceDBImpl implements StatisticsService {
         return item;
     }
 
+    private MorphologyStatistics getMorphologyStatistics() {
+        MorphologyStatistics morphology = new MorphologyStatistics();
+        morphology.setLoaded(morphologyService.isLoaded());
+        morphology.setLoadTimeMs(morphologyService.getLoadTimeMs());
+        morphology.setMemoryMb(morphologyService.getMemoryBytes() / (1024 * 1024));
+        long hits = normalFormCache.getHits();
+        long misses = normalFormCache.getMisses();
+        morphology.setCacheSize(normalFormCache.size());
+        morphology.setCacheHits(hits);
+        morphology.setCacheMisses(misses);
+        morphology.setCacheEvictions(normalFormCache.getEvictions());
+        morphology.setCacheHitRate(hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        return morphology;
+    }
+
     private int getLemmasCount(Site site) {
         int lemmasCount = 0;
         try {
@@ -1537,7 +1537,8 @@ var API = function(){
                     if (data.offset === 0) {
                         $content.empty();
                     }
-                    $searchResults.find('.SearchResult-amount').text(result.count);
+                    var approximate = result.approximateCount ? '~' : '';
+                    $searchResults.find('.SearchResult-amount').text(approximate + result.count);
                     var scroll = $(window).scrollTop();
                     result.data.forEach(function(page){
                         $content.append('<div class="SearchResult-block">' +
@@ -1559,7 +1560,7 @@ var API = function(){
                             .data('searchquery', data.query)
                             .data('searchsite', data.site)
                             .data('sendlimit', data.limit);
-                        $('.SearchResult-remain').text('(' + (result.count - data.offset - result.data.length) + ')')
+                        $('.SearchResult-remain').text('(' + approximate + (result.count - data.offset - result.data.length) + ')')
                     } else {
                         $('.SearchResult-footer').addClass('SearchResult-footer_hide')
                     }
@@ -0,0 +1,71 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostingCodecTest {
+    // целые неотрицательные ранги пишутся varint, остальные - 4 байтами float
+    private static final float[] RANKS = {0, 1, 7, 3.5f, 0.1f, -1, -2.75f, 1 << 30, Float.MAX_VALUE, -Float.MIN_VALUE};
+
+    @Test
+    void segmentRoundTripKeepsRanks() {
+        int[] pageIds = new int[RANKS.length];
+        for (int i = 0; i < pageIds.length; i++) {
+            pageIds[i] = 1 + i * 1000;
+        }
+        PostingCodec.Postings postings = new PostingCodec.Postings();
+        PostingCodec.decodeSegment(PostingCodec.encodeSegment(pageIds, RANKS, 0, RANKS.length), postings);
+        PostingList list = postings.build();
+
+        assertEquals(RANKS.length, list.size());
+        for (int i = 0; i < RANKS.length; i++) {
+            assertEquals(pageIds[i], list.pageId(i));
+            assertEquals(Float.floatToIntBits(RANKS[i]), Float.floatToIntBits(list.rank(i)));
+        }
+    }
+
+    @Test
+    void segmentRoundTripOfRange() {
+        int[] pageIds = {3, 8, 20, 21, 500};
+        float[] ranks = {2, -0.5f, 4.25f, 9, -100};
+        PostingCodec.Postings postings = new PostingCodec.Postings();
+        PostingCodec.decodeSegment(PostingCodec.encodeSegment(pageIds, ranks, 1, 4), postings);
+        PostingList list = postings.build();
+
+        assertEquals(3, list.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(pageIds[i + 1], list.pageId(i));
+            assertEquals(ranks[i + 1], list.rank(i));
+        }
+    }
+
+    @Test
+    void pageRoundTripKeepsRanksAndPositions() {
+        int[] lemmaIds = new int[RANKS.length];
+        byte[][] positions = new byte[RANKS.length][];
+        for (int i = 0; i < lemmaIds.length; i++) {
+            lemmaIds[i] = 10 + i * 37;
+            positions[i] = i % 3 == 0 ? null : new byte[]{(byte) i, (byte) -i, 0x7F};
+        }
+        List<Float> ranks = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        List<byte[]> decoded = new ArrayList<>();
+        PostingCodec.decodePage(PostingCodec.encodePage(lemmaIds, RANKS, positions), (lemmaId, rank, bytes) -> {
+            ids.add(lemmaId);
+            ranks.add(rank);
+            decoded.add(bytes);
+        });
+
+        assertEquals(RANKS.length, ids.size());
+        for (int i = 0; i < RANKS.length; i++) {
+            assertEquals(lemmaIds[i], ids.get(i));
+            assertEquals(Float.floatToIntBits(RANKS[i]), Float.floatToIntBits(ranks.get(i)));
+            assertArrayEquals(positions[i] == null ? new byte[0] : positions[i], decoded.get(i));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostingIntersectionTest {
+    private static final PostingIntersection.ScoreBound SUM_BOUND = maxRanks -> sum(maxRanks);
+
+    @Test
+    void competitiveMatchKeepsTopK() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            List<PostingList> lists = List.of(
+                    randomList(random, 50_000, 4_000),
+                    randomList(random, 50_000, 15_000),
+                    randomList(random, 50_000, 30_000));
+            for (int k : new int[]{1, 10, 100}) {
+                List<Double> expected = new ArrayList<>();
+                int exactCount = PostingIntersection.forEachMatch(lists, (pageId, ranks) -> expected.add(sum(ranks)));
+                expected.sort(Comparator.reverseOrder());
+
+                TopK top = new TopK(k);
+                PostingIntersection.Matches matches = PostingIntersection.forEachCompetitiveMatch(lists, SUM_BOUND,
+                        top::threshold, (pageId, ranks) -> top.offer(sum(ranks)));
+
+                assertEquals(expected.subList(0, Math.min(k, expected.size())), top.sorted());
+                if (!matches.approximate()) {
+                    assertEquals(exactCount, matches.count());
+                }
+            }
+        }
+    }
+
+    @Test
+    void competitiveMatchSkipsBlocks() {
+        List<PostingList> lists = List.of(randomList(new Random(7), 50_000, 4_000),
+                randomList(new Random(8), 50_000, 20_000));
+        int exactCount = PostingIntersection.forEachMatch(lists, (pageId, ranks) -> {
+        });
+        TopK top = new TopK(10);
+        PostingIntersection.Matches matches = PostingIntersection.forEachCompetitiveMatch(lists, SUM_BOUND,
+                top::threshold, (pageId, ranks) -> top.offer(sum(ranks)));
+
+        assertTrue(matches.approximate());
+        assertTrue(matches.count() > 0);
+        assertTrue(exactCount > 0);
+    }
+
+    @Test
+    void competitiveMatchIsExactWhenKCoversAllMatches() {
+        List<PostingList> lists = List.of(randomList(new Random(1), 50_000, 4_000),
+                randomList(new Random(2), 50_000, 20_000));
+        int exactCount = PostingIntersection.forEachMatch(lists, (pageId, ranks) -> {
+        });
+        TopK top = new TopK(exactCount + 1);
+        PostingIntersection.Matches matches = PostingIntersection.forEachCompetitiveMatch(lists, SUM_BOUND,
+                top::threshold, (pageId, ranks) -> top.offer(sum(ranks)));
+
+        assertFalse(matches.approximate());
+        assertEquals(exactCount, matches.count());
+        assertEquals(exactCount, top.sorted().size());
+    }
+
+    /**
+     * Случайный список: ранги страниц из каждой десятой тысячи pageId на порядок выше,
+     * чтобы максимальные ранги блоков различались и часть блоков можно было пропустить
+     */
+    private static PostingList randomList(Random random, int maxPageId, int size) {
+        PostingList.Builder builder = new PostingList.Builder();
+        double probability = (double) size / maxPageId;
+        for (int pageId = 1; pageId <= maxPageId; pageId++) {
+            if (random.nextDouble() < probability) {
+                float scale = pageId / 1000 % 10 == 0 ? 10 : 1;
+                builder.add(pageId, scale * (1 + random.nextInt(20)) / 4f);
+            }
+        }
+        return builder.build();
+    }
+
+    private static double sum(float[] values) {
+        double sum = 0;
+        for (float value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * K лучших оценок, порог - как у TopKCollector
+     */
+    private static class TopK {
+        private final int k;
+        private final PriorityQueue<Double> scores = new PriorityQueue<>();
+
+        TopK(int k) {
+            this.k = k;
+        }
+
+        void offer(double score) {
+            if (scores.size() < k) {
+                scores.add(score);
+            } else if (score > scores.peek()) {
+                scores.poll();
+                scores.add(score);
+            }
+        }
+
+        double threshold() {
+            return scores.size() < k ? Double.NEGATIVE_INFINITY : scores.peek();
+        }
+
+        List<Double> sorted() {
+            List<Double> sorted = new ArrayList<>(scores);
+            sorted.sort(Comparator.reverseOrder());
+            return sorted;
+        }
+    }
+}
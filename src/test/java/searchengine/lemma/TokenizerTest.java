@@ -0,0 +1,94 @@
+package searchengine.lemma;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenizerTest {
+
+    @Test
+    void splitsOnLetterBoundaries() {
+        String text = "  Привет,мир! Java-17 и\tSpring_Boot;  ёлка 42 ";
+        List<String> tokens = tokens(text);
+        // как прежнее replaceAll("[^а-яa-z\\s]", " ").split("\\s+"): ё и цифры не входят в слово
+        assertEquals(List.of("привет", "мир", "java", "и", "spring", "boot", "лка"), tokens);
+    }
+
+    @Test
+    void reportsIndexAndOffsets() {
+        String text = "Один, ДВА;три";
+        Tokenizer tokenizer = new Tokenizer(text);
+        assertEquals(-1, tokenizer.index());
+
+        assertTrue(tokenizer.next());
+        assertEquals(0, tokenizer.index());
+        assertEquals(0, tokenizer.start());
+        assertEquals(4, tokenizer.end());
+
+        assertTrue(tokenizer.next());
+        assertEquals(1, tokenizer.index());
+        assertEquals("два", tokenizer.token().toString());
+        assertEquals("ДВА", text.substring(tokenizer.start(), tokenizer.end()));
+
+        assertTrue(tokenizer.next());
+        assertEquals(2, tokenizer.index());
+        assertEquals(10, tokenizer.start());
+        assertEquals(text.length(), tokenizer.end());
+
+        assertFalse(tokenizer.next());
+        assertEquals("", tokenizer.token().toString());
+    }
+
+    @Test
+    void emptyAndSeparatorOnlyTextHasNoTokens() {
+        assertFalse(new Tokenizer("").next());
+        assertFalse(new Tokenizer(" ,.;123 — ").next());
+    }
+
+    @Test
+    void detectsScript() {
+        Tokenizer tokenizer = new Tokenizer("дом House ipадрес");
+        assertTrue(tokenizer.next());
+        assertEquals(Tokenizer.Script.CYRILLIC, tokenizer.script());
+        assertTrue(tokenizer.next());
+        assertEquals(Tokenizer.Script.LATIN, tokenizer.script());
+        assertTrue(tokenizer.next());
+        assertEquals("ipадрес", tokenizer.token().toString());
+        assertEquals(Tokenizer.Script.CYRILLIC, tokenizer.script());    // смешанное слово - русский словарь
+
+        assertEquals(Tokenizer.Script.CYRILLIC, Tokenizer.scriptOf("Ёж"));
+        assertEquals(Tokenizer.Script.CYRILLIC, Tokenizer.scriptOf("wi-fiсеть"));
+        assertEquals(Tokenizer.Script.LATIN, Tokenizer.scriptOf("Wi-Fi"));
+        assertEquals(Tokenizer.Script.OTHER, Tokenizer.scriptOf("123"));
+    }
+
+    @Test
+    void lemmaCounterKeepsCountsAcrossResize() {
+        LemmaCounter counter = new LemmaCounter();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {           // таблица на 64 ячейки растёт несколько раз
+            String lemma = "лемма" + i;
+            for (int j = 0; j <= i % 5; j++) {
+                counter.increment(lemma);
+                expected.merge(lemma, 1, Integer::sum);
+            }
+        }
+        assertEquals(expected, counter.toMap());
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) {
+            tokens.add(tokenizer.token().toString());
+        }
+        return tokens;
+    }
+}
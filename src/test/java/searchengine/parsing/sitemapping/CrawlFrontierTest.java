@@ -0,0 +1,84 @@
+package searchengine.parsing.sitemapping;
+
+import org.junit.jupiter.api.Test;
+import searchengine.config.IndexingSettings;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlFrontierTest {
+
+    private static CrawlFrontier frontier(boolean bloomFilter) {
+        IndexingSettings.Frontier settings = new IndexingSettings.Frontier();
+        settings.setBloomFilter(bloomFilter);
+        settings.setExpectedUrls(16);
+        return new CrawlFrontier(settings, UrlCanonicalizer::fingerprintKey);
+    }
+
+    @Test
+    void rejectsDuplicateOffer() {
+        for (boolean bloomFilter : new boolean[]{false, true}) {
+            CrawlFrontier frontier = frontier(bloomFilter);
+            assertTrue(frontier.offer("https://site.ru/a"));
+            assertFalse(frontier.offer("https://site.ru/a"));
+            assertFalse(frontier.offer("https://site.ru/a/"));     // тот же ключ fingerprintKey
+            assertTrue(frontier.offer("https://site.ru/a.html"));
+            assertEquals(2, frontier.size());
+
+            assertEquals("https://site.ru/a", frontier.poll());
+            assertEquals("https://site.ru/a.html", frontier.poll());
+            assertNull(frontier.poll());
+        }
+    }
+
+    @Test
+    void markVisitedBlocksRedirectTarget() {
+        CrawlFrontier frontier = frontier(false);
+        frontier.offer("https://site.ru/old");
+        String url = frontier.poll();
+        // страница /old перенаправила на /new: цель отмечается найденной и по ссылке больше не загружается
+        assertTrue(frontier.markVisited("https://site.ru/new"));
+        assertFalse(frontier.markVisited("https://site.ru/new/"));
+        assertFalse(frontier.offer("https://site.ru/new"));
+        frontier.done(url);
+
+        assertTrue(frontier.isFinished());
+        assertNull(frontier.poll());
+        assertEquals(2, frontier.size());
+    }
+
+    @Test
+    void finishesWhenEveryPolledUrlIsDone() throws InterruptedException {
+        CrawlFrontier frontier = frontier(false);
+        frontier.offer("https://site.ru/");
+        assertFalse(frontier.isFinished());
+        String url = frontier.poll(100, TimeUnit.MILLISECONDS);
+        assertEquals("https://site.ru/", url);
+        assertFalse(frontier.awaitFinished(10, TimeUnit.MILLISECONDS));
+        frontier.done(url);
+        assertTrue(frontier.awaitFinished(10, TimeUnit.MILLISECONDS));
+        assertNull(frontier.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void restoresVisitedAndPendingFromSnapshot() {
+        CrawlFrontier frontier = frontier(false);
+        frontier.offer("https://site.ru/a");
+        frontier.offer("https://site.ru/b");
+        frontier.poll();
+        CrawlFrontier.Snapshot snapshot = frontier.snapshot();
+
+        CrawlFrontier restored = frontier(false);
+        restored.restore(snapshot.visited(), snapshot.pending());
+        assertEquals(List.of("https://site.ru/a", "https://site.ru/b"), snapshot.pending());
+        assertFalse(restored.offer("https://site.ru/a"));
+        assertFalse(restored.offer("https://site.ru/b"));
+        assertEquals(2, restored.size());
+        assertFalse(restored.isFinished());
+    }
+}
@@ -0,0 +1,50 @@
+package searchengine.parsing.sitemapping;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashSetTest {
+
+    @Test
+    void keepsValuesAcrossResize() {
+        LongHashSet set = new LongHashSet(16);      // сегменты по 16 ячеек, растут много раз
+        Random random = new Random(5);
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            long value = random.nextLong();
+            assertEquals(expected.add(value), set.add(value));
+        }
+        assertEquals(expected.size(), set.size());
+        for (long value : expected) {
+            assertFalse(set.add(value), "value lost after resize: " + value);
+        }
+        assertEquals(expected.size(), set.size());
+
+        Set<Long> values = new HashSet<>();
+        Arrays.stream(set.toArray()).forEach(values::add);
+        assertEquals(expected, values);
+    }
+
+    @Test
+    void storesZeroAndNegativeValues() {
+        LongHashSet set = new LongHashSet(0);
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(-1));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertFalse(set.add(Long.MIN_VALUE));
+        assertEquals(3, set.size());
+
+        Set<Long> values = new HashSet<>();
+        Arrays.stream(set.toArray()).forEach(values::add);
+        assertEquals(Set.of(0L, -1L, Long.MIN_VALUE), values);
+    }
+}
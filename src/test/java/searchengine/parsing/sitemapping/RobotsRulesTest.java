@@ -0,0 +1,91 @@
+package searchengine.parsing.sitemapping;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RobotsRulesTest {
+    private static final String USER_AGENT = "HeliontSearchBot/1.0 (+https://example.org/bot)";
+
+    private static final String ROBOTS = """
+            User-agent: *
+            Disallow: /private/
+            Crawl-delay: 5
+
+            # отдельная группа для нашего робота
+            User-agent: HeliontSearchBot
+            Disallow: /search
+            Disallow: /docs/
+            Allow: /docs/public/
+            Disallow: /*.php$
+            Crawl-delay: 0.5
+
+            User-agent: OtherBot
+            Disallow: /
+
+            Sitemap: https://site.ru/sitemap.xml
+            """;
+
+    @Test
+    void selectsGroupOfOurUserAgent() {
+        RobotsRules rules = RobotsRules.parse(ROBOTS, USER_AGENT);
+        assertTrue(rules.isAllowed("/private/page"));       // группа "*" не действует
+        assertFalse(rules.isAllowed("/search?q=1"));
+        assertEquals(500, rules.getCrawlDelayMs());
+        assertEquals(List.of("https://site.ru/sitemap.xml"), rules.getSitemaps());
+
+        RobotsRules other = RobotsRules.parse(ROBOTS, "SomeCrawler/2.0");
+        assertFalse(other.isAllowed("/private/page"));
+        assertTrue(other.isAllowed("/search"));
+        assertEquals(5000, other.getCrawlDelayMs());
+    }
+
+    @Test
+    void longestMatchWinsAndAllowWinsTie() {
+        RobotsRules rules = RobotsRules.parse(ROBOTS, USER_AGENT);
+        assertFalse(rules.isAllowed("/docs/internal"));
+        assertTrue(rules.isAllowed("/docs/public/guide"));
+        assertFalse(rules.isAllowed("/index.php"));
+        assertTrue(rules.isAllowed("/index.php?page=2"));    // "$" - конец пути
+        assertTrue(rules.isAllowed("/about"));
+
+        RobotsRules tie = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /page
+                Allow: /page
+                """, USER_AGENT);
+        assertTrue(tie.isAllowed("/page/1"));
+    }
+
+    @Test
+    void emptyDisallowAllowsEverything() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow:\n", USER_AGENT);
+        assertTrue(rules.isAllowed("/"));
+        assertEquals(0, rules.getCrawlDelayMs());
+    }
+
+    @Test
+    void serverErrorDisallowsCrawling() {
+        assertSame(RobotsRules.DISALLOW_ALL, RobotsRules.of(response(503, ""), USER_AGENT));
+        assertSame(RobotsRules.DISALLOW_ALL, RobotsRules.of(FetchResult.failed("https://site.ru/robots.txt"),
+                USER_AGENT));
+        assertFalse(RobotsRules.DISALLOW_ALL.isAllowed("/"));
+        assertFalse(RobotsRules.DISALLOW_ALL.isAllowed("/any/page"));
+
+        assertSame(RobotsRules.ALLOW_ALL, RobotsRules.of(response(404, ""), USER_AGENT));
+        RobotsRules parsed = RobotsRules.of(response(200, "User-agent: *\nDisallow: /tmp/\n"), USER_AGENT);
+        assertFalse(parsed.isAllowed("/tmp/x"));
+        assertTrue(parsed.isAllowed("/"));
+    }
+
+    private static FetchResult response(int statusCode, String body) {
+        return new FetchResult("https://site.ru/robots.txt", statusCode, "text/plain",
+                body.getBytes(StandardCharsets.UTF_8), null, null);
+    }
+}
@@ -0,0 +1,91 @@
+package searchengine.parsing.sitemapping;
+
+import org.junit.jupiter.api.Test;
+import searchengine.config.IndexingSettings;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UrlCanonicalizerTest {
+    private static final String DOMAIN = "https://site.ru";
+
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(DOMAIN, new IndexingSettings.UrlFilter(),
+            List.of(), List.of());
+
+    @Test
+    void foldsSchemeWwwAndDefaultPort() {
+        assertEquals("https://site.ru/a", canonicalizer.canonicalize("http://www.site.ru/a"));
+        assertEquals("https://site.ru/a", canonicalizer.canonicalize("https://WWW.Site.ru:443/a"));
+        assertEquals("https://site.ru/a", canonicalizer.canonicalize("http://site.ru:80/a#top"));
+        assertEquals("https://site.ru/", canonicalizer.canonicalize("https://site.ru"));
+        assertNull(canonicalizer.canonicalize("https://site.ru:8080/a"));
+        assertNull(canonicalizer.canonicalize("https://other.ru/a"));
+        assertNull(canonicalizer.canonicalize("ftp://site.ru/a"));
+        assertNull(canonicalizer.canonicalize("mailto:info@site.ru"));
+    }
+
+    @Test
+    void removesSessionPathParameter() {
+        assertEquals("https://site.ru/a?x=1", canonicalizer.canonicalize("https://site.ru/a;jsessionid=A1B2?x=1"));
+        assertEquals("https://site.ru/a/b", canonicalizer.canonicalize("https://site.ru/a;JSESSIONID=A1B2/b"));
+    }
+
+    @Test
+    void resolvesDotSegmentsAndKeepsTrailingSlash() {
+        assertEquals("https://site.ru/a/c/", canonicalizer.canonicalize("https://site.ru/a/./b/../c/"));
+        assertEquals("https://site.ru/a/", canonicalizer.canonicalize("https://site.ru/a/b/.."));
+        assertEquals("https://site.ru/a/b", canonicalizer.canonicalize("https://site.ru//a//b"));
+        assertEquals("https://site.ru/", canonicalizer.canonicalize("https://site.ru/a/../.."));
+    }
+
+    @Test
+    void stripsParamsByGlobAndSortsQuery() {
+        assertEquals("https://site.ru/a?a=1&b=2",
+                canonicalizer.canonicalize("https://site.ru/a?utm_source=x&b=2&gclid=3&a=1"));
+        assertEquals("https://site.ru/a", canonicalizer.canonicalize("https://site.ru/a?UTM_Medium=y&PHPSESSID=z"));
+        assertEquals("https://site.ru/a?sort=asc", canonicalizer.canonicalize("https://site.ru/a?sort=asc&"));
+
+        IndexingSettings.UrlFilter settings = new IndexingSettings.UrlFilter();
+        settings.setStripQuery(true);
+        UrlCanonicalizer noQuery = new UrlCanonicalizer(DOMAIN, settings, List.of(), List.of());
+        assertEquals("https://site.ru/a", noQuery.canonicalize("https://site.ru/a?sort=asc"));
+    }
+
+    @Test
+    void dropsDeniedExtensionsAndDeepPaths() {
+        assertNull(canonicalizer.canonicalize("https://site.ru/img/logo.PNG"));
+        assertNull(canonicalizer.canonicalize("https://site.ru/files/price.pdf?v=2"));
+        assertEquals("https://site.ru/news/1.html", canonicalizer.canonicalize("https://site.ru/news/1.html"));
+
+        IndexingSettings.UrlFilter settings = new IndexingSettings.UrlFilter();
+        settings.setMaxDepth(3);
+        UrlCanonicalizer shallow = new UrlCanonicalizer(DOMAIN, settings, List.of(), List.of());
+        assertEquals("https://site.ru/a/b/c/", shallow.canonicalize("https://site.ru/a/b/c/"));
+        assertNull(shallow.canonicalize("https://site.ru/a/b/c/d"));
+        assertEquals("https://site.ru/a/b/c/", shallow.canonicalize("https://site.ru/a/b/c/d/.."));
+    }
+
+    @Test
+    void appliesSiteIncludeAndExclude() {
+        UrlCanonicalizer filtered = new UrlCanonicalizer(DOMAIN, new IndexingSettings.UrlFilter(),
+                List.of("^/news/"), List.of("/archive/"));
+        assertEquals("https://site.ru/news/1", filtered.canonicalize("https://site.ru/news/1"));
+        assertNull(filtered.canonicalize("https://site.ru/about"));
+        assertNull(filtered.canonicalize("https://site.ru/news/archive/1"));
+    }
+
+    @Test
+    void fingerprintKeyFoldsTrailingSlashOfExtensionlessPaths() {
+        assertEquals(UrlCanonicalizer.fingerprintKey("https://site.ru/a"),
+                UrlCanonicalizer.fingerprintKey("https://site.ru/a/"));
+        assertEquals(UrlCanonicalizer.fingerprintKey("https://site.ru/a?x=1"),
+                UrlCanonicalizer.fingerprintKey("https://site.ru/a/?x=1"));
+        assertEquals("https://site.ru/a.html", UrlCanonicalizer.fingerprintKey("https://site.ru/a.html"));
+        assertEquals("https://site.ru", UrlCanonicalizer.fingerprintKey("https://site.ru"));
+        assertNotEquals(UrlCanonicalizer.fingerprintKey("https://site.ru/a.html"),
+                UrlCanonicalizer.fingerprintKey("https://site.ru/a.html/"));
+    }
+}